@@ -49,6 +49,7 @@ class ClusterHubBindings extends AbstractModule {
         bind(DynamoUtils.class).asEagerSingleton();
         bind(S3BatchManager.class).asEagerSingleton();
         bind(S3Verifier.class).asEagerSingleton();
+        bind(S3BatchRollup.class).asEagerSingleton();
         bind(AppUrlCheck.class).asEagerSingleton();
 
         bind(SpokeTtlEnforcer.class)
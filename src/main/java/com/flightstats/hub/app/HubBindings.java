@@ -17,6 +17,8 @@ import com.flightstats.hub.replication.ReplicationManager;
 import com.flightstats.hub.rest.*;
 import com.flightstats.hub.spoke.FileSpokeStore;
 import com.flightstats.hub.spoke.GCRunner;
+import com.flightstats.hub.spoke.LocalSpokeStore;
+import com.flightstats.hub.spoke.SegmentSpokeStore;
 import com.flightstats.hub.spoke.SpokeClusterRegister;
 import com.flightstats.hub.spoke.SpokeFinalCheck;
 import com.flightstats.hub.spoke.SpokeReadContentDao;
@@ -151,6 +153,17 @@ public class HubBindings extends AbstractModule {
         return mapper;
     }
 
+    private static LocalSpokeStore buildLocalSpokeStore(SpokeStore spokeStore) {
+        String path = HubProperties.getSpokePath(spokeStore);
+        int ttlMinutes = HubProperties.getSpokeTtlMinutes(spokeStore);
+        String storage = HubProperties.getSpokeStorage(spokeStore);
+        logger.info("using {} storage for spoke {}", storage, spokeStore);
+        if ("segment".equals(storage)) {
+            return new SegmentSpokeStore(path, ttlMinutes);
+        }
+        return new FileSpokeStore(path, ttlMinutes);
+    }
+
     @Override
     protected void configure() {
         Names.bindProperties(binder(), HubProperties.getProperties());
@@ -184,17 +197,13 @@ public class HubBindings extends AbstractModule {
                 .annotatedWith(Names.named(ContentDao.READ_CACHE))
                 .to(SpokeReadContentDao.class).asEagerSingleton();
 
-        bind(FileSpokeStore.class)
+        bind(LocalSpokeStore.class)
                 .annotatedWith(Names.named(SpokeStore.WRITE.name()))
-                .toInstance(new FileSpokeStore(
-                        HubProperties.getSpokePath(SpokeStore.WRITE),
-                        HubProperties.getSpokeTtlMinutes(SpokeStore.WRITE)));
+                .toInstance(buildLocalSpokeStore(SpokeStore.WRITE));
 
-        bind(FileSpokeStore.class)
+        bind(LocalSpokeStore.class)
                 .annotatedWith(Names.named(SpokeStore.READ.name()))
-                .toInstance(new FileSpokeStore(
-                        HubProperties.getSpokePath(SpokeStore.READ),
-                        HubProperties.getSpokeTtlMinutes(SpokeStore.READ)));
+                .toInstance(buildLocalSpokeStore(SpokeStore.READ));
     }
 
 }
@@ -53,6 +53,12 @@ public class HubProperties {
         return getProperty(property, getProperty(fallbackProperty, defaultPath));
     }
 
+    public static String getSpokeStorage(SpokeStore spokeStore) {
+        String property = "spoke." + spokeStore + ".storage";
+        String fallbackProperty = "spoke.storage";
+        return getProperty(property, getProperty(fallbackProperty, "file"));
+    }
+
     public static long getLargePayload() {
         return HubProperties.getProperty("app.large.payload.MB", 40) * 1024 * 1024;
     }
@@ -77,6 +83,16 @@ public class HubProperties {
         return getProperty("s3.writeQueueSize", 40000);
     }
 
+    /**
+     * The journal defaults to a sibling of the spoke write root, as anything inside a spoke root without a channel
+     * is removed by the TtlEnforcer.
+     */
+    public static String getS3WriteQueuePath() {
+        File writeRoot = new File(getSpokePath(SpokeStore.WRITE)).getAbsoluteFile();
+        File parent = writeRoot.getParentFile() == null ? writeRoot : writeRoot.getParentFile();
+        return StringUtils.defaultIfBlank(getProperty("s3.writeQueuePath", ""), new File(parent, "s3WriteQueue").getPath());
+    }
+
     public static int getS3WriteQueueThreads() {
         return getProperty("s3.writeQueueThreads", 20);
     }
@@ -1,6 +1,7 @@
 package com.flightstats.hub.channel;
 
 import com.flightstats.hub.dao.ChannelService;
+import com.flightstats.hub.dao.ContentCodec;
 import com.flightstats.hub.exception.ConflictException;
 import com.flightstats.hub.exception.ForbiddenRequestException;
 import com.flightstats.hub.exception.InvalidRequestException;
@@ -45,6 +46,7 @@ public class ChannelValidator {
         validateDescription(config);
         validateTags(config);
         validateStorage(config);
+        validateCodec(config);
         if (config.isProtect()) {
             ensurePropertyNotBlank("Owner", config.getOwner());
         }
@@ -96,6 +98,12 @@ public class ChannelValidator {
         }
     }
 
+    private void validateCodec(ChannelConfig config) {
+        if (!ContentCodec.isValid(config.getCodec())) {
+            throw new InvalidRequestException("{\"error\": \"Valid codec values are " + StringUtils.join(ContentCodec.values(), ", ") + "\"}");
+        }
+    }
+
     private void validateTags(ChannelConfig request) {
         if (request.getTags().size() > 20) {
             throw new InvalidRequestException("{\"error\": \"Channels are limited to 20 tags\"}");
@@ -1,7 +1,9 @@
 package com.flightstats.hub.cluster;
 
 import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.util.Hash;
 import com.flightstats.hub.util.StringUtils;
+import com.flightstats.hub.util.TimeUtil;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -12,12 +14,15 @@ import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 @Singleton
 public class CuratorCluster implements Cluster {
@@ -25,6 +30,8 @@ public class CuratorCluster implements Cluster {
     private final static Logger logger = LoggerFactory.getLogger(CuratorCluster.class);
 
     private final static int WRITE_FACTOR = HubProperties.getProperty("spoke.write.factor", 3);
+    private final static int MAX_PLACED_HOURS = 6;
+    private final static long SETTLE_MILLIS = TimeUnit.SECONDS.toMillis(HubProperties.getProperty("spoke.placement.settleSeconds", 60));
     private final CuratorFramework curator;
     private final String clusterPath;
     private final boolean useName;
@@ -32,6 +39,7 @@ public class CuratorCluster implements Cluster {
     private DecommissionCluster decommissionCluster;
     private final PathChildrenCache clusterCache;
     private String fullPath;
+    private volatile long membershipChanged = System.currentTimeMillis();
 
     @Inject
     public CuratorCluster(CuratorFramework curator, String clusterPath, boolean useName,
@@ -43,6 +51,14 @@ public class CuratorCluster implements Cluster {
         this.decommissionCluster = decommissionCluster;
         clusterCache = new PathChildrenCache(curator, clusterPath, true);
         clusterCache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+        addListener((client, event) -> {
+            switch (event.getType()) {
+                case CHILD_ADDED:
+                case CHILD_REMOVED:
+                case CHILD_UPDATED:
+                    membershipChanged = System.currentTimeMillis();
+            }
+        });
     }
 
     public void addCacheListener() {
@@ -94,6 +110,96 @@ public class CuratorCluster implements Cluster {
         }
     }
 
+    /**
+     * Servers for writing a channel's items between the start and end times.
+     * Each hour of a channel is placed on the WRITE_FACTOR servers with the highest rendezvous hash for that hour,
+     * skipping decommissioned servers.
+     */
+    public List<String> getWriteServers(String channel, DateTime start, DateTime end) {
+        List<String> hours = getHours(start, end);
+        if (hours.size() > MAX_PLACED_HOURS) {
+            return getWriteServers();
+        }
+        Set<String> allServers = getAllServers();
+        Set<String> writeable = new HashSet<>(decommissionCluster.filter(allServers));
+        Set<String> servers = new LinkedHashSet<>();
+        for (String hour : hours) {
+            int count = 0;
+            for (String server : rank(channel + "/" + hour, allServers)) {
+                if (count == WRITE_FACTOR) {
+                    break;
+                }
+                if (writeable.contains(server)) {
+                    servers.add(server);
+                    count++;
+                }
+            }
+        }
+        return new ArrayList<>(servers);
+    }
+
+    /**
+     * Servers for reading a channel's item, with the servers it is placed on first, in random order, followed by the rest.
+     * If the cluster has changed since the item's hour began, all of the servers are returned in random order.
+     */
+    public List<String> getReadServers(String channel, DateTime time) {
+        Set<String> placed = getQueryServers(channel, time, time);
+        List<String> servers = new ArrayList<>(placed);
+        Collections.shuffle(servers);
+        List<String> others = getRandomServers();
+        others.removeAll(placed);
+        servers.addAll(others);
+        return servers;
+    }
+
+    /**
+     * Servers which may hold a channel's items between the start and end times.
+     * If the cluster has changed since the start hour began, or the range is too long, this is all of the servers.
+     */
+    public Set<String> getQueryServers(String channel, DateTime start, DateTime end) {
+        List<String> hours = getHours(start, end);
+        DateTime startHour = start.withZone(DateTimeZone.UTC).hourOfDay().roundFloorCopy();
+        if (hours.size() > MAX_PLACED_HOURS || startHour.getMillis() < membershipChanged + SETTLE_MILLIS) {
+            return getAllServers();
+        }
+        Set<String> allServers = getAllServers();
+        Set<String> writeable = new HashSet<>(decommissionCluster.filter(allServers));
+        Set<String> servers = new HashSet<>();
+        for (String hour : hours) {
+            int count = 0;
+            for (String server : rank(channel + "/" + hour, allServers)) {
+                if (count == WRITE_FACTOR) {
+                    break;
+                }
+                servers.add(server);
+                if (writeable.contains(server)) {
+                    count++;
+                }
+            }
+        }
+        return servers;
+    }
+
+    private static List<String> getHours(DateTime start, DateTime end) {
+        List<String> hours = new ArrayList<>();
+        DateTime hour = start.withZone(DateTimeZone.UTC).hourOfDay().roundFloorCopy();
+        while (!hour.isAfter(end) && hours.size() <= MAX_PLACED_HOURS) {
+            hours.add(TimeUtil.hours(hour));
+            hour = hour.plusHours(1);
+        }
+        return hours;
+    }
+
+    /**
+     * @return the servers, ordered by their rendezvous hash with the bucket, highest first
+     */
+    static List<String> rank(String bucket, Collection<String> servers) {
+        List<String> ranked = new ArrayList<>(servers);
+        ranked.sort(Comparator.comparingLong((String server) -> Hash.hash(server + "|" + bucket)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        return ranked;
+    }
+
     @Override
     public Set<String> getAllServers() {
         Set<String> servers = new HashSet<>();
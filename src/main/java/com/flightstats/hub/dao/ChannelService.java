@@ -115,6 +115,7 @@ public class ChannelService {
             Traces traces = ActiveTraces.getLocal();
             traces.add("ContentService.insert");
             try {
+                content.setCodec(ContentCodec.fromName(channelConfig.getCodec()));
                 content.packageStream();
                 checkZeroBytes(content, channelConfig);
                 traces.add("ContentService.insert marshalled");
@@ -149,6 +150,7 @@ public class ChannelService {
             throw new InvalidRequestException(msg);
         }
         boolean insert = inFlightService.inFlight(() -> {
+            content.setCodec(ContentCodec.fromName(channelConfig.getCodec()));
             content.packageStream();
             checkZeroBytes(content, channelConfig);
             return contentService.historicalInsert(normalizedChannelName, content);
@@ -172,8 +174,9 @@ public class ChannelService {
         }
         long start = System.currentTimeMillis();
         Collection<ContentKey> contentKeys = inFlightService.inFlight(() -> {
+            ContentCodec codec = ContentCodec.fromName(getCachedChannelConfig(channel).getCodec());
             MultiPartParser multiPartParser = new MultiPartParser(bulkContent);
-            multiPartParser.parse();
+            multiPartParser.parse(item -> item.setCodec(codec));
             return contentService.insert(bulkContent);
         });
         metricsService.insert(channel, start, Insert.bulk, bulkContent.getItems().size(), bulkContent.getSize());
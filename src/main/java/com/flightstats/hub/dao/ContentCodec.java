@@ -0,0 +1,183 @@
+package com.flightstats.hub.dao;
+
+import com.flightstats.hub.app.HubProperties;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The compression applied to an item's payload when it is stored.
+ * ZIP is the original zip envelope, which all versions of the hub can read.  The other codecs are written
+ * in the envelope described in {@link ContentMarshaller}, with the codec's id, so the id of a codec must never change.
+ * <p>
+ * The codec is set per channel, and falls back to the property content.codec.
+ */
+public enum ContentCodec {
+
+    ZIP(0, null),
+    STORE(1, new Envelope() {
+        @Override
+        public OutputStream encode(OutputStream output) {
+            return new FilterOutputStream(output) {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    out.write(bytes, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decode(InputStream input) {
+            return input;
+        }
+    }),
+    DEFLATE_FAST(2, new Deflate(Deflater.BEST_SPEED)),
+    DEFLATE(3, new Deflate(Deflater.DEFAULT_COMPRESSION)),
+    LZ(4, new Envelope() {
+        @Override
+        public OutputStream encode(OutputStream output) {
+            return new LzCodec.LzOutputStream(output);
+        }
+
+        @Override
+        public InputStream decode(InputStream input) {
+            return new LzCodec.LzInputStream(input);
+        }
+    });
+
+    private static final ContentCodec[] byId = new ContentCodec[values().length];
+
+    static {
+        for (ContentCodec codec : values()) {
+            if (codec.isEnvelope()) {
+                byId[codec.id] = codec;
+            }
+        }
+    }
+
+    private final int id;
+    private final Envelope envelope;
+
+    ContentCodec(int id, Envelope envelope) {
+        this.id = id;
+        this.envelope = envelope;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return false for ZIP, which has its own format rather than the envelope
+     */
+    public boolean isEnvelope() {
+        return envelope != null;
+    }
+
+    Envelope getEnvelope() {
+        return envelope;
+    }
+
+    /**
+     * @param id the codec id read from an envelope, which is never ZIP
+     */
+    public static ContentCodec fromId(int id) throws IOException {
+        if (id < 0 || id >= byId.length || byId[id] == null) {
+            throw new IOException("unknown envelope codec " + id);
+        }
+        return byId[id];
+    }
+
+    public static boolean isValid(String name) {
+        if (StringUtils.isBlank(name)) {
+            return true;
+        }
+        try {
+            valueOf(StringUtils.upperCase(name));
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param name the channel's codec, which falls back to content.codec when blank
+     */
+    public static ContentCodec fromName(String name) {
+        if (StringUtils.isBlank(name)) {
+            return getDefault();
+        }
+        return valueOf(StringUtils.upperCase(name));
+    }
+
+    public static ContentCodec getDefault() {
+        return valueOf(StringUtils.upperCase(HubProperties.getProperty("content.codec", ZIP.name())));
+    }
+
+    /**
+     * Compresses the payload of an envelope.
+     */
+    interface Envelope {
+
+        /**
+         * @return a stream which compresses into output, and must be closed to complete the payload
+         */
+        OutputStream encode(OutputStream output);
+
+        InputStream decode(InputStream input);
+    }
+
+    private static class Deflate implements Envelope {
+        private final int level;
+
+        Deflate(int level) {
+            this.level = level;
+        }
+
+        @Override
+        public OutputStream encode(OutputStream output) {
+            return deflate(output, level);
+        }
+
+        @Override
+        public InputStream decode(InputStream input) {
+            return inflate(input);
+        }
+    }
+
+    private static OutputStream deflate(OutputStream output, int level) {
+        Deflater deflater = new Deflater(level, true);
+        return new DeflaterOutputStream(output, deflater, 8 * 1024) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    private static InputStream inflate(InputStream input) {
+        Inflater inflater = new Inflater(true);
+        return new FilterInputStream(new InflaterInputStream(input, inflater, 8 * 1024)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
@@ -5,7 +5,9 @@ import com.flightstats.hub.model.*;
 import com.google.common.base.Optional;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.function.Consumer;
@@ -26,6 +28,20 @@ public interface ContentDao {
 
     Content get(String channelName, ContentKey key);
 
+    /**
+     * @return the items found, which may not include every key
+     */
+    default Map<ContentKey, Content> getAll(String channelName, Collection<ContentKey> keys) {
+        Map<ContentKey, Content> found = new HashMap<>();
+        for (ContentKey key : keys) {
+            Content content = get(channelName, key);
+            if (content != null) {
+                found.put(key, content);
+            }
+        }
+        return found;
+    }
+
     SortedSet<ContentKey> queryByTime(TimeQuery timQuery);
 
     SortedSet<ContentKey> query(DirectionQuery query);
@@ -42,6 +58,13 @@ public interface ContentDao {
         throw new UnsupportedOperationException("writeBatch is not supported");
     }
 
+    /**
+     * Writes a batch as it is read from the stream, for batches which are too large to hold in memory.
+     */
+    default void writeBatch(String channel, ContentPath path, Collection<ContentKey> keys, InputStream stream) {
+        throw new UnsupportedOperationException("writeBatch is not supported");
+    }
+
     default Map<ContentKey, Content> readBatch(String channelName, ContentKey key) throws IOException {
         throw new UnsupportedOperationException("readBatch is not supported");
     }
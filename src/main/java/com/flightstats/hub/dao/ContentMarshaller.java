@@ -7,23 +7,95 @@ import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.exception.ContentTooLargeException;
 import com.flightstats.hub.model.Content;
 import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.util.ByteBlocks;
 import com.google.common.io.ByteStreams;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+/**
+ * Items are stored either in the original zip format, with a "meta" entry and a "payload" entry and the size in the
+ * comment, or in a binary envelope with the payload compressed by a {@link ContentCodec}.
+ * <p>
+ * The envelope is [short magic][byte version][byte codec][byte flags][int size], then [short length][UTF-8] for each of
+ * the content type and the user when the flags include them, then the payload.
+ * The zip format is recognized by its local header.
+ */
 public class ContentMarshaller {
 
     private static final ObjectMapper mapper = new ObjectMapper();
+    private static final short MAGIC = 0x4855;
+    private static final byte VERSION = 2;
+    private static final int HAS_TYPE = 1;
+    private static final int HAS_USER = 2;
 
     public static byte[] toBytes(Content content) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ZipOutputStream zipOut = new ZipOutputStream(baos);
+        return toBytes(content, content.getCodec());
+    }
+
+    public static byte[] toBytes(Content content, ContentCodec codec) throws IOException {
+        return toBlocks(content, codec).toByteArray();
+    }
+
+    /**
+     * Packages the item's stream straight into blocks, so the only copy of the item is the packaged one.
+     */
+    public static ByteBlocks toBlocks(Content content, ContentCodec codec) throws IOException {
+        if (!codec.isEnvelope()) {
+            return toZipBlocks(content);
+        }
+        ByteBlocks blocks = new ByteBlocks(getInitialSize(content, codec));
+        DataOutputStream output = new DataOutputStream(blocks);
+        output.writeShort(MAGIC);
+        output.writeByte(VERSION);
+        output.writeByte(codec.getId());
+        output.writeByte(content.getContentType().isPresent() ? HAS_TYPE : 0);
+        int sizeIndex = output.size();
+        output.writeInt(0);
+        if (content.getContentType().isPresent()) {
+            writeString(output, content.getContentType().get());
+        }
+        OutputStream encoder = codec.getEnvelope().encode(blocks);
+        long bytesCopied = ByteStreams.copy(content.getStream(), encoder);
+        encoder.close();
+        content.setSize(bytesCopied);
+        blocks.putInt(sizeIndex, (int) bytesCopied);
+        return blocks;
+    }
+
+    /**
+     * A stored payload fits exactly in one block when the length is known.
+     * Compressed payloads start small, as their blocks grow without copying.
+     */
+    private static int getInitialSize(Content content, ContentCodec codec) {
+        long length = content.getContentLength();
+        if (length <= 0 || length > Integer.MAX_VALUE - 1024) {
+            return 1024;
+        }
+        if (codec != ContentCodec.STORE) {
+            return (int) Math.min(length + 64, 8 * 1024);
+        }
+        return (int) length + 64 + content.getContentType().or("").length() * 3;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("value is too long for the envelope " + bytes.length);
+        }
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    private static ByteBlocks toZipBlocks(Content content) throws IOException {
+        ByteBlocks blocks = new ByteBlocks(getInitialSize(content, ContentCodec.ZIP));
+        ZipOutputStream zipOut = new ZipOutputStream(blocks);
         zipOut.setLevel(Deflater.BEST_COMPRESSION);
         zipOut.putNextEntry(new ZipEntry("meta"));
         String meta = getMetaData(content);
@@ -33,7 +105,7 @@ public class ContentMarshaller {
         content.setSize(bytesCopied);
         zipOut.setComment("" + bytesCopied);
         zipOut.close();
-        return baos.toByteArray();
+        return blocks;
     }
 
     public static String getMetaData(Content content) {
@@ -45,6 +117,12 @@ public class ContentMarshaller {
     }
 
     public static Content toContent(byte[] read, ContentKey key) throws IOException {
+        if (read.length >= 4) {
+            ByteBuffer buffer = ByteBuffer.wrap(read);
+            if (buffer.getShort(0) == MAGIC && read[2] == VERSION) {
+                return fromEnvelope(read, key);
+            }
+        }
         ZipInputStream zipStream = new ZipInputStream(new ByteArrayInputStream(read));
         zipStream.getNextEntry();
         byte[] bytes = ByteStreams.toByteArray(zipStream);
@@ -58,6 +136,35 @@ public class ContentMarshaller {
         return builder.withStream(zipStream).build();
     }
 
+    private static Content fromEnvelope(byte[] read, ContentKey key) throws IOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(read);
+            buffer.position(3);
+            ContentCodec codec = ContentCodec.fromId(buffer.get());
+            int flags = buffer.get();
+            long size = buffer.getInt() & 0xFFFFFFFFL;
+            Content.Builder builder = Content.builder().withContentKey(key);
+            if ((flags & HAS_TYPE) != 0) {
+                builder.withContentType(readString(buffer));
+            }
+            if ((flags & HAS_USER) != 0) {
+                readString(buffer);
+            }
+            InputStream payload = new ByteArrayInputStream(read, buffer.position(), buffer.remaining());
+            return builder.withSize(size)
+                    .withStream(codec.getEnvelope().decode(payload))
+                    .build();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("truncated content " + key, e);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     public static void setMetaData(String metaData, Content.Builder builder) throws IOException {
         JsonNode jsonNode = mapper.readTree(metaData);
         if (jsonNode.has("contentType")) {
@@ -0,0 +1,305 @@
+package com.flightstats.hub.dao;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A byte oriented LZ77 codec, in the style of LZ4, which trades compression ratio for speed.
+ * <p>
+ * The stream is a series of blocks of up to 64KB of input, each written as [int rawLength][int encodedLength][bytes],
+ * ending with a rawLength of 0.  A block which does not compress is stored, with an encodedLength of -1.
+ * An encoded block is a series of sequences of [token][literal length...][literals][short offset][match length...],
+ * where the token holds 4 bits each of the literal length and the match length less 4, and lengths of 15 or more
+ * continue in following bytes.  The last sequence of a block has only literals.
+ */
+class LzCodec {
+
+    static final int BLOCK_SIZE = 64 * 1024;
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 13;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final ThreadLocal<int[]> tables = ThreadLocal.withInitial(() -> new int[1 << HASH_BITS]);
+
+    /**
+     * @return the length of the encoded block, or -1 if the block does not compress
+     */
+    static int compress(byte[] input, int length, byte[] output, int[] table) {
+        Arrays.fill(table, -1);
+        int position = 0;
+        int anchor = 0;
+        int out = 0;
+        int limit = length - MIN_MATCH;
+        while (position < limit) {
+            int hash = hash(input, position);
+            int candidate = table[hash];
+            table[hash] = position;
+            if (candidate < 0 || position - candidate > MAX_OFFSET || !matches(input, candidate, position)) {
+                position++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (position + matchLength < length && input[candidate + matchLength] == input[position + matchLength]) {
+                matchLength++;
+            }
+            int literals = position - anchor;
+            if (out + literals + 16 + literals / 255 + matchLength / 255 >= length) {
+                return -1;
+            }
+            out = writeSequence(input, anchor, literals, position - candidate, matchLength, output, out);
+            position += matchLength;
+            anchor = position;
+        }
+        int literals = length - anchor;
+        if (out + literals + 6 + literals / 255 >= length) {
+            return -1;
+        }
+        output[out++] = (byte) (Math.min(literals, 15) << 4);
+        out = writeLength(literals, output, out);
+        System.arraycopy(input, anchor, output, out, literals);
+        return out + literals;
+    }
+
+    static void decompress(byte[] input, int length, byte[] output, int rawLength) throws IOException {
+        int position = 0;
+        int out = 0;
+        try {
+            while (position < length) {
+                int token = input[position++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int next;
+                    do {
+                        next = input[position++] & 0xFF;
+                        literals += next;
+                    } while (next == 255);
+                }
+                System.arraycopy(input, position, output, out, literals);
+                position += literals;
+                out += literals;
+                if (position >= length) {
+                    break;
+                }
+                int offset = (input[position++] & 0xFF) | (input[position++] & 0xFF) << 8;
+                int matchLength = token & 15;
+                if (matchLength == 15) {
+                    int next;
+                    do {
+                        next = input[position++] & 0xFF;
+                        matchLength += next;
+                    } while (next == 255);
+                }
+                matchLength += MIN_MATCH;
+                int from = out - offset;
+                if (from < 0 || offset == 0) {
+                    throw new IOException("invalid LZ offset " + offset);
+                }
+                for (int i = 0; i < matchLength; i++) {
+                    output[out++] = output[from + i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("corrupt LZ block", e);
+        }
+        if (out != rawLength) {
+            throw new IOException("LZ block expected " + rawLength + " bytes, found " + out);
+        }
+    }
+
+    private static int writeSequence(byte[] input, int anchor, int literals, int offset, int matchLength,
+                                     byte[] output, int out) {
+        int extraMatch = matchLength - MIN_MATCH;
+        output[out++] = (byte) (Math.min(literals, 15) << 4 | Math.min(extraMatch, 15));
+        out = writeLength(literals, output, out);
+        System.arraycopy(input, anchor, output, out, literals);
+        out += literals;
+        output[out++] = (byte) offset;
+        output[out++] = (byte) (offset >>> 8);
+        return writeLength(extraMatch, output, out);
+    }
+
+    private static int writeLength(int length, byte[] output, int out) {
+        if (length >= 15) {
+            int remaining = length - 15;
+            while (remaining >= 255) {
+                output[out++] = (byte) 255;
+                remaining -= 255;
+            }
+            output[out++] = (byte) remaining;
+        }
+        return out;
+    }
+
+    private static int hash(byte[] input, int position) {
+        int value = (input[position] & 0xFF) | (input[position + 1] & 0xFF) << 8
+                | (input[position + 2] & 0xFF) << 16 | (input[position + 3] & 0xFF) << 24;
+        return (value * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    private static boolean matches(byte[] input, int candidate, int position) {
+        return input[candidate] == input[position]
+                && input[candidate + 1] == input[position + 1]
+                && input[candidate + 2] == input[position + 2]
+                && input[candidate + 3] == input[position + 3];
+    }
+
+    static class LzOutputStream extends OutputStream {
+
+        private final OutputStream output;
+        private byte[] block = new byte[1024];
+        private byte[] encoded;
+        private int count;
+        private boolean closed;
+
+        LzOutputStream(OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureSpace();
+            block[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                ensureSpace();
+                int copy = Math.min(length, block.length - count);
+                System.arraycopy(bytes, offset, block, count, copy);
+                count += copy;
+                offset += copy;
+                length -= copy;
+            }
+        }
+
+        /**
+         * The block grows as needed, so small items do not allocate a full block.
+         */
+        private void ensureSpace() throws IOException {
+            if (count < block.length) {
+                return;
+            }
+            if (block.length < BLOCK_SIZE) {
+                block = Arrays.copyOf(block, Math.min(BLOCK_SIZE, block.length * 4));
+            } else {
+                writeBlock();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (encoded == null || encoded.length < count) {
+                encoded = new byte[block.length];
+            }
+            int length = compress(block, count, encoded, tables.get());
+            writeInt(count);
+            writeInt(length);
+            if (length < 0) {
+                output.write(block, 0, count);
+            } else {
+                output.write(encoded, 0, length);
+            }
+            count = 0;
+        }
+
+        private void writeInt(int value) throws IOException {
+            output.write(value >>> 24);
+            output.write(value >>> 16);
+            output.write(value >>> 8);
+            output.write(value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (count > 0) {
+                writeBlock();
+            }
+            writeInt(0);
+            output.close();
+        }
+    }
+
+    static class LzInputStream extends InputStream {
+
+        private final DataInputStream input;
+        private byte[] encoded = new byte[0];
+        private byte[] block = new byte[0];
+        private int count;
+        private int position;
+        private boolean done;
+
+        LzInputStream(InputStream input) {
+            this.input = new DataInputStream(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return block[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int copy = Math.min(length, count - position);
+            System.arraycopy(block, position, bytes, offset, copy);
+            position += copy;
+            return copy;
+        }
+
+        @Override
+        public int available() {
+            return count - position;
+        }
+
+        private boolean fill() throws IOException {
+            while (position == count) {
+                if (done) {
+                    return false;
+                }
+                int rawLength = input.readInt();
+                if (rawLength == 0) {
+                    done = true;
+                    return false;
+                }
+                if (rawLength < 0 || rawLength > BLOCK_SIZE) {
+                    throw new IOException("invalid LZ block length " + rawLength);
+                }
+                int length = input.readInt();
+                if (block.length < rawLength) {
+                    block = new byte[rawLength];
+                }
+                if (length < 0) {
+                    input.readFully(block, 0, rawLength);
+                } else {
+                    if (encoded.length < length) {
+                        encoded = new byte[length];
+                    }
+                    input.readFully(encoded, 0, length);
+                    decompress(encoded, length, block, rawLength);
+                }
+                count = rawLength;
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package com.flightstats.hub.dao;
 
+import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.model.ChannelConfig;
-import com.flightstats.hub.util.Commander;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -14,8 +15,13 @@ import java.util.function.Consumer;
 public class TtlEnforcer {
     private final static Logger logger = LoggerFactory.getLogger(TtlEnforcer.class);
 
+    /**
+     * @param path            the storage path, with a directory per channel
+     * @param channelConsumer called for each existing channel
+     * @param dirRemover      called with the name of each directory which no longer has a channel
+     */
     public static void enforce(String path, ChannelService channelService,
-                               Consumer<ChannelConfig> channelConsumer) {
+                               Consumer<ChannelConfig> channelConsumer, Consumer<String> dirRemover) {
         try {
             File spokeRoot = new File(path);
             Set<String> dirSet = new HashSet<>(Arrays.asList(spokeRoot.list()));
@@ -27,13 +33,26 @@ public class TtlEnforcer {
             }
             dirSet.removeAll(channelSet);
             dirSet.remove("lost+found");
+            dirSet.removeIf(dir -> isS3WriteQueue(new File(spokeRoot, dir)));
             for (String dir : dirSet) {
-                String dirPath = path + "/" + dir;
-                logger.info("removing dir without channel {}", dirPath);
-                Commander.run(new String[]{"rm", "-rf", dirPath}, 1);
+                logger.info("removing dir without channel {}/{}", path, dir);
+                dirRemover.accept(dir);
             }
         } catch (Exception e) {
             logger.warn("unble to run " + path, e);
         }
     }
+
+    /**
+     * The S3 write journal may be configured inside a spoke root, and must never be removed as a missing channel.
+     */
+    private static boolean isS3WriteQueue(File dir) {
+        try {
+            File journal = new File(HubProperties.getS3WriteQueuePath());
+            return dir.getCanonicalFile().equals(journal.getCanonicalFile());
+        } catch (IOException e) {
+            logger.warn("unable to compare " + dir, e);
+            return true;
+        }
+    }
 }
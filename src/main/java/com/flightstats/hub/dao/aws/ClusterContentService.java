@@ -23,12 +23,9 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -43,6 +40,9 @@ public class ClusterContentService implements ContentService {
     private static final long largePayload = HubProperties.getLargePayload();
     private final boolean dropSomeWrites = HubProperties.getProperty("s3.dropSomeWrites", false);
     private static final int queryMergeMaxWaitMinutes = HubProperties.getProperty("query.merge.max.wait.minutes", 2);
+    private static final int spokeReadBatchKeys = HubProperties.getProperty("spoke.read.batchKeys", 500);
+    private static final int streamPrefetch = HubProperties.getProperty("stream.prefetch", 4);
+    private static final long streamPrefetchBytes = HubProperties.getProperty("stream.prefetchMB", 32) * 1024L * 1024L;
 
     @Inject
     @Named(ContentDao.WRITE_CACHE)
@@ -155,17 +155,19 @@ public class ClusterContentService implements ContentService {
         return checkForLargeIndex(channelName, content);
     }
 
+    /**
+     * Only the item is read from the batch, and cached.
+     */
     private Content getFromS3BatchAndStoreInReadCache(String channelName, ContentKey key) {
         try {
-            Map<ContentKey, Content> map = s3BatchContentDao.readBatch(channelName, key);
-            Content content = map.get(key);
+            Content content = s3BatchContentDao.get(channelName, key);
             if (content == null) {
                 return null;
             }
             Content copy = Content.copy(content);
-            storeBatchInReadCache(channelName, map);
+            storeBatchInReadCache(channelName, Collections.singletonMap(key, content));
             return copy;
-        } catch (IOException e) {
+        } catch (RuntimeException e) {
             logger.warn("unable to get batch from long term storage", e);
             return null;
         }
@@ -199,39 +201,142 @@ public class ClusterContentService implements ContentService {
         return startTime.minusMinutes(HubProperties.getSpokeTtlMinutes(SpokeStore.WRITE));
     }
 
+    /**
+     * Keys in Spoke are fetched in batches, with up to streamPrefetch batches being fetched ahead of the callback,
+     * which still receives the items in order.  The batches held ahead of the callback are limited to
+     * stream.prefetchMB, where a batch still being fetched counts as the largest batch fetched so far.
+     * Minutes from S3 batch are streamed straight to the callback, so a large minute is never held in memory.
+     */
     @Override
     public void get(StreamResults streamResults) {
         String channelName = streamResults.getChannel();
+        boolean descending = streamResults.isDescending();
         Consumer<Content> callback = streamResults.getCallback();
         List<MinutePath> minutePaths = new ArrayList<>(ContentKeyUtil.convert(streamResults.getKeys()));
-        if (streamResults.isDescending()) {
+        if (descending) {
             Collections.reverse(minutePaths);
         }
         ChannelConfig channel = channelService.getCachedChannelConfig(channelName);
         DateTime spokeTtlTime = getSpokeTtlTime(channelName);
+        List<Callable<List<Content>>> units = new ArrayList<>();
         for (MinutePath minutePath : minutePaths) {
             if (minutePath.getTime().isAfter(spokeTtlTime)
                     || channel.isSingle()) {
-                getValues(channelName, streamResults.getCallback(), minutePath, streamResults.isDescending());
+                units.addAll(getValues(channelName, minutePath, descending, spokeTtlTime));
             } else {
-                if (!s3BatchContentDao.streamMinute(channelName, minutePath, streamResults.isDescending(), callback)) {
-                    getValues(channelName, callback, minutePath, streamResults.isDescending());
+                prefetch(units, callback);
+                units.clear();
+                if (!s3BatchContentDao.streamMinute(channelName, minutePath, descending, callback)) {
+                    prefetch(getValues(channelName, minutePath, descending, spokeTtlTime), callback);
+                }
+            }
+        }
+        prefetch(units, callback);
+    }
+
+    private void prefetch(List<Callable<List<Content>>> units, Consumer<Content> callback) {
+        Traces traces = ActiveTraces.getLocal();
+        Deque<Future<List<Content>>> pending = new ArrayDeque<>();
+        AtomicLong prefetched = new AtomicLong();
+        AtomicLong largest = new AtomicLong();
+        Iterator<Callable<List<Content>>> iterator = units.iterator();
+        try {
+            while (iterator.hasNext() || !pending.isEmpty()) {
+                while (iterator.hasNext() && (pending.isEmpty()
+                        || (pending.size() < streamPrefetch && hasRoom(pending, prefetched.get(), largest.get())))) {
+                    Callable<List<Content>> unit = iterator.next();
+                    pending.add(executorService.submit(() -> {
+                        ActiveTraces.setLocal(traces);
+                        List<Content> contents = unit.call();
+                        long bytes = getBytes(contents);
+                        largest.accumulateAndGet(bytes, Math::max);
+                        prefetched.addAndGet(bytes);
+                        return contents;
+                    }));
                 }
+                List<Content> contents = pending.poll().get();
+                for (Content content : contents) {
+                    callback.accept(content);
+                }
+                prefetched.addAndGet(-getBytes(contents));
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeInterruptedException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Future<List<Content>> future : pending) {
+                future.cancel(true);
             }
         }
     }
 
-    private void getValues(String channelName, Consumer<Content> callback, ContentPathKeys contentPathKeys, boolean descending) {
+    /**
+     * A unit which is still being fetched counts as the largest unit so far, and none are started until one is known.
+     */
+    private static boolean hasRoom(Collection<Future<List<Content>>> pending, long prefetched, long largest) {
+        if (largest == 0) {
+            return false;
+        }
+        long fetching = pending.stream().filter(future -> !future.isDone()).count();
+        return prefetched + (fetching + 1) * largest <= streamPrefetchBytes;
+    }
+
+    private static long getBytes(List<Content> contents) {
+        long bytes = 0;
+        for (Content content : contents) {
+            bytes += Math.max(0, content.getSize());
+        }
+        return bytes;
+    }
+
+    /**
+     * Keys in the Spoke write cache are read in batches, with any items not found read individually.
+     *
+     * @return a unit for each batch of keys
+     */
+    private List<Callable<List<Content>>> getValues(String channelName, ContentPathKeys contentPathKeys,
+                                                    boolean descending, DateTime spokeTtlTime) {
         List<ContentKey> keys = new ArrayList<>(contentPathKeys.getKeys());
         if (descending) {
             Collections.reverse(keys);
         }
-        for (ContentKey contentKey : keys) {
-            Optional<Content> contentOptional = get(channelName, contentKey, false);
+        List<Callable<List<Content>>> units = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += spokeReadBatchKeys) {
+            List<ContentKey> batch = keys.subList(i, Math.min(keys.size(), i + spokeReadBatchKeys));
+            units.add(() -> getBatch(channelName, batch, spokeTtlTime));
+        }
+        return units;
+    }
+
+    private List<Content> getBatch(String channelName, List<ContentKey> batch, DateTime spokeTtlTime) {
+        List<ContentKey> cached = new ArrayList<>();
+        for (ContentKey key : batch) {
+            if (key.getTime().isAfter(spokeTtlTime)) {
+                cached.add(key);
+            }
+        }
+        Map<ContentKey, Content> found = Collections.emptyMap();
+        if (cached.size() > 1) {
+            found = spokeWriteContentDao.getAll(channelName, cached);
+        }
+        List<Content> contents = new ArrayList<>();
+        for (ContentKey contentKey : batch) {
+            Content content = found.get(contentKey);
+            Optional<Content> contentOptional;
+            if (content == null) {
+                contentOptional = get(channelName, contentKey, false);
+            } else {
+                contentOptional = checkForLargeIndex(channelName, content);
+            }
             if (contentOptional.isPresent()) {
-                callback.accept(contentOptional.get());
+                contents.add(contentOptional.get());
             }
         }
+        return contents;
     }
 
     @Override
@@ -385,6 +490,7 @@ public class ClusterContentService implements ContentService {
         s3LargePayloadContentDao.delete(channelName);
         lastContentPath.delete(channelName, CHANNEL_LATEST_UPDATED);
         lastContentPath.delete(channelName, S3Verifier.LAST_SINGLE_VERIFIED);
+        lastContentPath.delete(channelName, S3BatchRollup.LAST_ROLLUP_HOUR);
         ChannelConfig channel = channelService.getCachedChannelConfig(channelName);
         if (!channel.isSingle()) {
             new S3Batch(channel, hubUtils).stop();
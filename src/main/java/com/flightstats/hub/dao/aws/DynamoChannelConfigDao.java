@@ -58,6 +58,9 @@ public class DynamoChannelConfigDao implements Dao<ChannelConfig> {
         if (StringUtils.isNotEmpty(config.getStorage())) {
             item.put("storage", new AttributeValue(config.getStorage()));
         }
+        if (StringUtils.isNotEmpty(config.getCodec())) {
+            item.put("codec", new AttributeValue(config.getCodec()));
+        }
         PutItemRequest putItemRequest = new PutItemRequest()
                 .withTableName(getTableName())
                 .withItem(item);
@@ -130,6 +133,9 @@ public class DynamoChannelConfigDao implements Dao<ChannelConfig> {
         if (item.containsKey("storage")) {
             builder.storage(item.get("storage").getS());
         }
+        if (item.containsKey("codec")) {
+            builder.codec(item.get("codec").getS());
+        }
         if (item.containsKey("protect")) {
             builder.protect(item.get("protect").getBOOL());
         }
@@ -95,6 +95,15 @@ public class HubS3Client {
         }
     }
 
+    ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+        try {
+            return s3Client.getObjectMetadata(request);
+        } catch (SdkClientException e) {
+            countError(e, request, "getObjectMetadata", Arrays.asList("bucket:" + request.getBucketName(), "key:" + request.getKey()));
+            throw e;
+        }
+    }
+
     void deleteObject(DeleteObjectRequest request) {
         try {
             s3Client.deleteObject(request);
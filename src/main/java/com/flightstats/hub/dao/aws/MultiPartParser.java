@@ -6,35 +6,62 @@ import com.flightstats.hub.exception.InvalidRequestException;
 import com.flightstats.hub.model.BulkContent;
 import com.flightstats.hub.model.Content;
 import com.flightstats.hub.model.ContentKey;
-import com.flightstats.hub.util.ByteRing;
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
+/**
+ * Parses a multipart bulk insert from the stream a block at a time.
+ * <p>
+ * Each block is searched for the delimiter CRLF--boundary with Boyer-Moore-Horspool, and the bytes of the current
+ * part are copied once into the part's buffer.  Each item is handed off as soon as its closing delimiter is read,
+ * so only the current block and the current part are held by the parser.
+ */
 public class MultiPartParser {
     private final static Logger logger = LoggerFactory.getLogger(MultiPartParser.class);
 
     private static final int maxBytes = HubProperties.getProperty("app.maxPayloadSizeMB", 40) * 1024 * 1024 * 3;
-    private BulkContent bulkContent;
-    private BufferedInputStream stream;
-    private Content.Builder builder;
-    private final ByteArrayOutputStream baos;
+    private static final int BLOCK_SIZE = 64 * 1024;
     private static final byte[] CRLF = "\r\n".getBytes();
 
+    private enum State {PREAMBLE, HEADER, DATA, DONE}
+
+    private final BulkContent bulkContent;
+    private final InputStream stream;
+    private Content.Builder builder;
+    private byte[] delimiter;
+    private int[] shifts;
+    private byte[] buffer;
+    private int start;
+    private int end;
+    private long count;
+    private boolean eof;
+    private byte[] part = new byte[1024];
+    private int partLength;
+    private State state = State.PREAMBLE;
+
     public MultiPartParser(BulkContent bulkContent) {
         this.bulkContent = bulkContent;
         builder = Content.builder();
-        stream = new BufferedInputStream(bulkContent.getStream());
-        baos = new ByteArrayOutputStream();
+        stream = bulkContent.getStream();
     }
 
     public void parse() throws IOException {
-        parseItems();
+        parse(item -> {
+        });
+    }
+
+    /**
+     * @param listener is called with each item as it is parsed, before keys are assigned to a new bulk insert
+     */
+    public void parse(Consumer<Content> listener) throws IOException {
+        parseItems(listener);
         if (bulkContent.getItems().isEmpty()) {
             throw new InvalidRequestException("multipart has no items");
         } else if (bulkContent.isNew()) {
@@ -46,53 +73,164 @@ public class MultiPartParser {
         }
     }
 
-    private void parseItems() throws IOException {
-        String boundary = "--" + getBoundary();
-        byte[] startBoundary = (boundary + "\r\n").getBytes();
-        byte[] endBoundary = (boundary + "--").getBytes();
-        boolean started = false;
-        boolean header = false;
-        ByteRing byteRing = new ByteRing(endBoundary.length);
-        int count = 0;
-        int read = stream.read();
-        while (read != -1) {
-            count++;
-            if (count > maxBytes) {
-                logger.warn("multipart max payload exceeded {}", maxBytes, bulkContent.getChannel());
-                throw new ContentTooLargeException("max payload size is " + maxBytes + " bytes");
+    private void parseItems(Consumer<Content> listener) throws IOException {
+        delimiter = ("\r\n--" + getBoundary()).getBytes(StandardCharsets.UTF_8);
+        shifts = shifts(delimiter);
+        buffer = new byte[Math.max(BLOCK_SIZE, delimiter.length * 2 + 2)];
+        //the leading CRLF lets a boundary at the start of the stream match the delimiter
+        System.arraycopy(CRLF, 0, buffer, 0, CRLF.length);
+        end = CRLF.length;
+        while (state != State.DONE) {
+            if (state == State.HEADER) {
+                parseHeader();
+            } else {
+                parseData(listener);
             }
-            baos.write((byte) read);
-            byteRing.put((byte) read);
-
-            if (byteRing.compare(startBoundary)) {
-                if (!started) {
-                    started = true;
-                    baos.reset();
-                } else {
-                    addItem(startBoundary);
-                }
-                header = true;
-                builder.withContentType("text/plain");
-            } else if (header && byteRing.compare(CRLF)) {
-                String headerLine = StringUtils.strip(baos.toString());
-                baos.reset();
-                if (StringUtils.isEmpty(headerLine)) {
-                    header = false;
-                } else {
-                    if (StringUtils.startsWithIgnoreCase(headerLine, "content-type:")) {
-                        String type = StringUtils.trim(StringUtils.removeStartIgnoreCase(headerLine, "content-type:"));
-                        builder.withContentType(type);
-                    } else if (StringUtils.startsWithIgnoreCase(headerLine, "content-key:")) {
-                        String key = StringUtils.trim(StringUtils.removeStartIgnoreCase(headerLine, "content-key:"));
-                        builder.withContentKey(ContentKey.fromFullUrl(key));
-                    }
+        }
+    }
+
+    /**
+     * Reads header lines until the first blank line.
+     */
+    private void parseHeader() throws IOException {
+        int newLine = indexOf((byte) '\n', start, end);
+        if (newLine < 0) {
+            append(start, end);
+            start = end;
+            if (!fill()) {
+                state = State.DONE;
+            }
+            return;
+        }
+        append(start, newLine + 1);
+        start = newLine + 1;
+        if (partLength < 2 || part[partLength - 2] != '\r') {
+            return;
+        }
+        String headerLine = StringUtils.strip(new String(part, 0, partLength, StandardCharsets.UTF_8));
+        partLength = 0;
+        if (StringUtils.isEmpty(headerLine)) {
+            state = State.DATA;
+        } else if (StringUtils.startsWithIgnoreCase(headerLine, "content-type:")) {
+            String type = StringUtils.trim(StringUtils.removeStartIgnoreCase(headerLine, "content-type:"));
+            builder.withContentType(type);
+        } else if (StringUtils.startsWithIgnoreCase(headerLine, "content-key:")) {
+            String key = StringUtils.trim(StringUtils.removeStartIgnoreCase(headerLine, "content-key:"));
+            builder.withContentKey(ContentKey.fromFullUrl(key));
+        }
+    }
+
+    /**
+     * Copies the bytes up to the next delimiter into the current part, discarding them in the preamble.
+     * A delimiter followed by CRLF starts the next part, and one followed by -- ends the stream.
+     */
+    private void parseData(Consumer<Content> listener) throws IOException {
+        int found = search(start, end);
+        if (found < 0) {
+            int safe = Math.max(start, end - delimiter.length - 1);
+            append(start, safe);
+            start = safe;
+        } else if (found + delimiter.length + 2 > end) {
+            append(start, found);
+            start = found;
+        } else {
+            int after = found + delimiter.length;
+            boolean next = buffer[after] == '\r' && buffer[after + 1] == '\n';
+            boolean last = buffer[after] == '-' && buffer[after + 1] == '-';
+            if (!next && !last) {
+                append(start, found + 1);
+                start = found + 1;
+                return;
+            }
+            append(start, found);
+            start = after + 2;
+            if (state == State.DATA) {
+                addItem(listener);
+            }
+            builder = Content.builder().withContentType("text/plain");
+            partLength = 0;
+            state = last ? State.DONE : State.HEADER;
+            return;
+        }
+        if (!fill()) {
+            state = State.DONE;
+        }
+    }
+
+    private void append(int from, int to) {
+        int length = to - from;
+        if (state == State.PREAMBLE || length <= 0) {
+            return;
+        }
+        if (partLength + length > part.length) {
+            part = Arrays.copyOf(part, Math.max(partLength + length, part.length * 2));
+        }
+        System.arraycopy(buffer, from, part, partLength, length);
+        partLength += length;
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer, and reads the next block after them.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int remaining = end - start;
+        System.arraycopy(buffer, start, buffer, 0, remaining);
+        start = 0;
+        end = remaining;
+        int read = stream.read(buffer, end, buffer.length - end);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        count += read;
+        if (count > maxBytes) {
+            logger.warn("multipart max payload exceeded {} {}", maxBytes, bulkContent.getChannel());
+            throw new ContentTooLargeException("max payload size is " + maxBytes + " bytes");
+        }
+        end += read;
+        return true;
+    }
+
+    private static int[] shifts(byte[] pattern) {
+        int[] shifts = new int[256];
+        Arrays.fill(shifts, pattern.length);
+        for (int i = 0; i < pattern.length - 1; i++) {
+            shifts[pattern[i] & 0xFF] = pattern.length - 1 - i;
+        }
+        return shifts;
+    }
+
+    /**
+     * @return the index of the delimiter in the buffer, or -1 if it is not in [from, to)
+     */
+    private int search(int from, int to) {
+        int last = delimiter.length - 1;
+        int position = from;
+        while (position + last < to) {
+            int i = last;
+            while (buffer[position + i] == delimiter[i]) {
+                if (i == 0) {
+                    return position;
                 }
-            } else if (byteRing.compare(endBoundary)) {
-                addItem(endBoundary);
-                break;
+                i--;
+            }
+            position += shifts[buffer[position + last] & 0xFF];
+        }
+        return -1;
+    }
+
+    private int indexOf(byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                return i;
             }
-            read = stream.read();
         }
+        return -1;
     }
 
     private String getBoundary() {
@@ -104,17 +242,13 @@ public class MultiPartParser {
 
     }
 
-    private void addItem(byte[] boundary) {
-        byte[] bytes = baos.toByteArray();
-        byte[] data = ArrayUtils.subarray(bytes, 0, bytes.length - boundary.length - CRLF.length);
-        if ((data.length == 0 && builder.getContentKey().isPresent())
-                || data.length > 0) {
-            builder.withData(data);
-            bulkContent.getItems().add(builder.build());
+    private void addItem(Consumer<Content> listener) {
+        if (partLength > 0 || builder.getContentKey().isPresent()) {
+            builder.withData(Arrays.copyOf(part, partLength));
+            Content item = builder.build();
+            bulkContent.getItems().add(item);
+            listener.accept(item);
         }
-        builder = Content.builder();
-        baos.reset();
     }
 
-
 }
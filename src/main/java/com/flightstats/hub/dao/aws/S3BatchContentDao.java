@@ -1,7 +1,6 @@
 package com.flightstats.hub.dao.aws;
 
 import com.amazonaws.services.s3.model.*;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -12,11 +11,17 @@ import com.flightstats.hub.metrics.ActiveTraces;
 import com.flightstats.hub.metrics.MetricsService;
 import com.flightstats.hub.metrics.Traces;
 import com.flightstats.hub.model.*;
+import com.flightstats.hub.util.ByteBlocks;
+import com.flightstats.hub.util.ChunkOutputStream;
+import com.flightstats.hub.util.RuntimeInterruptedException;
 import com.flightstats.hub.util.TimeUtil;
 import com.google.common.base.Optional;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -26,11 +31,17 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -41,10 +52,18 @@ public class S3BatchContentDao implements ContentDao {
     private final static Logger logger = LoggerFactory.getLogger(S3BatchContentDao.class);
     private static final String BATCH_INDEX = "Batch/index/";
     private static final String BATCH_ITEMS = "Batch/items/";
+    private static final String BATCH_HOURS = "Batch/hours/";
+    private static final int MAX_HOUR_LISTINGS = 4;
+    private static final int MIN_PART_BYTES = 5 * 1024 * 1024;
+    private static final int HEAD_BLOCK_BYTES = 64 * 1024;
     private static final ObjectMapper mapper = new ObjectMapper();
 
     private final boolean useEncrypted = HubProperties.isAppEncrypted();
     private final int s3MaxQueryItems = HubProperties.getProperty("s3.maxQueryItems", 1000);
+    private final boolean binaryIndex = HubProperties.getProperty("s3.batchIndex.binary", false);
+    private final int indexParallel = HubProperties.getProperty("s3.batchIndex.parallel", 8);
+    private final int uploadThreads = HubProperties.getProperty("s3.batch.uploadThreads", 2);
+    private static final ExecutorService executorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("S3BatchIndex-%d").build());
     @Inject
     private HubS3Client s3Client;
     @Inject
@@ -75,11 +94,52 @@ public class S3BatchContentDao implements ContentDao {
         }
     }
 
+    /**
+     * Reads just the item when the batch index records its location, otherwise the whole minute.
+     */
     private Content getS3Object(String channel, ContentKey key) throws IOException {
         logger.trace("S3BatchContentDao.getS3Object {} {}", channel, key);
+        MinutePath minutePath = new MinutePath(key.getTime());
+        S3BatchIndex index = getIndex(channel, minutePath);
+        if (index != null) {
+            if (!index.contains(key)) {
+                return null;
+            }
+            long[] location = index.getLocation(key);
+            if (location != null) {
+                return readItem(channel, minutePath, key, location[0], location[1]);
+            }
+        }
         return readBatch(channel, key).get(key);
     }
 
+    private S3BatchIndex getIndex(String channel, MinutePath minutePath) throws IOException {
+        long start = System.currentTimeMillis();
+        GetObjectRequest request = new GetObjectRequest(s3BucketName.getS3BucketName(), getS3BatchIndexKey(channel, minutePath));
+        try (S3Object object = s3Client.getObject(request)) {
+            return S3BatchIndex.read(ByteStreams.toByteArray(object.getObjectContent()));
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+            return null;
+        } finally {
+            metricsService.time(channel, "s3.get", start, "type:batch");
+        }
+    }
+
+    private Content readItem(String channel, MinutePath minutePath, ContentKey key, long offset, long length) throws IOException {
+        ActiveTraces.getLocal().add("S3BatchContentDao.readItem", key, length);
+        long start = System.currentTimeMillis();
+        GetObjectRequest request = new GetObjectRequest(s3BucketName.getS3BucketName(), getS3BatchItemsKey(channel, minutePath))
+                .withRange(offset, offset + length - 1);
+        try (S3Object object = s3Client.getObject(request)) {
+            return S3BatchZip.read(key, ByteStreams.toByteArray(object.getObjectContent()));
+        } finally {
+            metricsService.time(channel, "s3.get", start, "type:batch");
+        }
+    }
+
     @Override
     public Map<ContentKey, Content> readBatch(String channelName, ContentKey key) throws IOException {
         MinutePath minutePath = new MinutePath(key.getTime());
@@ -202,16 +262,82 @@ public class S3BatchContentDao implements ContentDao {
         DateTime rounded = query.getUnit().round(query.getStartTime());
         String channel = query.getChannelName();
         traces.add("S3BatchContentDao.queryHourPlus starting ", channel, rounded, query.getUnit());
-        ListObjectsRequest request = new ListObjectsRequest()
+        String timePrefix = query.getUnit().format(rounded);
+        SortedSet<MinutePath> hourPaths = listMinutePaths(channel, BATCH_HOURS, listRequest(channel + BATCH_HOURS + timePrefix), traces, true);
+        Set<DateTime> rolledUp = new HashSet<>();
+        List<String> indexKeys = new ArrayList<>();
+        for (MinutePath hourPath : hourPaths) {
+            rolledUp.add(hourPath.getTime());
+            indexKeys.add(getS3BatchHourKey(channel, hourPath.getTime()));
+        }
+        List<DateTime> missingHours = new ArrayList<>();
+        DateTime end = rounded.plus(query.getUnit().getDuration());
+        for (DateTime hour = rounded; hour.isBefore(end); hour = hour.plusHours(1)) {
+            if (!rolledUp.contains(hour)) {
+                missingHours.add(hour);
+            }
+        }
+        if (missingHours.size() <= MAX_HOUR_LISTINGS) {
+            for (DateTime hour : missingHours) {
+                String hourPrefix = channel + BATCH_INDEX + TimeUtil.Unit.HOURS.format(hour);
+                for (MinutePath minutePath : listMinutePaths(channel, BATCH_INDEX, listRequest(hourPrefix), traces, true)) {
+                    indexKeys.add(getS3BatchIndexKey(channel, minutePath));
+                }
+            }
+        } else {
+            SortedSet<MinutePath> minutePaths = listMinutePaths(channel, BATCH_INDEX, listRequest(channel + BATCH_INDEX + timePrefix), traces, true);
+            for (MinutePath minutePath : minutePaths) {
+                if (!rolledUp.contains(minutePath.getTime().hourOfDay().roundFloorCopy())) {
+                    indexKeys.add(getS3BatchIndexKey(channel, minutePath));
+                }
+            }
+        }
+        SortedSet<ContentKey> found = keys;
+        fetchIndexes(channel, indexKeys, traces, items -> {
+            found.addAll(items);
+            return true;
+        });
+        traces.add("S3BatchContentDao.queryHourPlus found keys", keys);
+        return keys;
+    }
+
+    private ListObjectsRequest listRequest(String prefix) {
+        return new ListObjectsRequest()
                 .withBucketName(s3BucketName.getS3BucketName())
-                .withPrefix(channel + BATCH_INDEX + query.getUnit().format(rounded))
+                .withPrefix(prefix)
                 .withMaxKeys(s3MaxQueryItems);
-        SortedSet<MinutePath> minutePaths = listMinutePaths(channel, request, traces, true);
+    }
+
+    /**
+     * Merges the minute indexes of an hour into a single hour index, so queries of the hour need one GET.
+     * The items stay in their minute batches, and the merged index keeps their locations.
+     * This should only be called once the S3Batch webhook has completed every minute of the hour, as an hour index
+     * hides any minute index of the hour written after it, and an empty index hides the whole hour.
+     *
+     * @return the number of keys in the hour
+     */
+    public int rollupHour(String channel, DateTime hour) throws IOException {
+        Traces traces = ActiveTraces.getLocal();
+        String hourPrefix = channel + BATCH_INDEX + TimeUtil.Unit.HOURS.format(hour);
+        SortedSet<MinutePath> minutePaths = listMinutePaths(channel, BATCH_INDEX, listRequest(hourPrefix), traces, true);
+        List<ContentKey> keys = new ArrayList<>();
+        Map<String, long[]> locations = new HashMap<>();
         for (MinutePath minutePath : minutePaths) {
-            getKeysForMinute(channel, minutePath, keys, traces);
+            S3BatchIndex index = getIndex(channel, minutePath);
+            if (index == null) {
+                continue;
+            }
+            for (ContentKey key : index.getKeys()) {
+                keys.add(key);
+                long[] location = index.getLocation(key);
+                if (location != null) {
+                    locations.put(key.toUrl(), location);
+                }
+            }
         }
-        traces.add("S3BatchContentDao.queryHourPlus found keys", keys);
-        return keys;
+        putObject(channel, getS3BatchHourKey(channel, hour), S3BatchIndex.write(keys, locations));
+        traces.add("S3BatchContentDao.rollupHour", channel, hour, keys.size());
+        return keys.size();
     }
 
     private SortedSet<ContentKey> queryMinute(String channel, DateTime startTime, TimeUtil.Unit unit) {
@@ -233,35 +359,65 @@ public class S3BatchContentDao implements ContentDao {
     }
 
     private void getKeysForMinute(String channel, MinutePath minutePath, SortedSet<ContentKey> keys, Traces traces) {
-        getKeysForMinute(channel, minutePath, traces, item -> {
-            keys.add(ContentKey.fromUrl(item.asText()).get());
-        });
+        keys.addAll(getKeys(channel, getS3BatchIndexKey(channel, minutePath), traces));
     }
 
-    private void getKeysForMinute(String channel, MinutePath minutePath, Traces traces, Consumer<JsonNode> itemNodeConsumer) {
+    /**
+     * @return the keys in the index, or an empty list if the index can not be read
+     */
+    private List<ContentKey> getKeys(String channel, String indexKey, Traces traces) {
         long start = System.currentTimeMillis();
-        GetObjectRequest request = new GetObjectRequest(s3BucketName.getS3BucketName(), getS3BatchIndexKey(channel, minutePath));
+        GetObjectRequest request = new GetObjectRequest(s3BucketName.getS3BucketName(), indexKey);
         try (S3Object object = s3Client.getObject(request)) {
             byte[] bytes = ByteStreams.toByteArray(object.getObjectContent());
-            JsonNode root = mapper.readTree(bytes);
-            JsonNode items = root.get("items");
-            for (JsonNode item : items) {
-                itemNodeConsumer.accept(item);
-            }
-            traces.add("S3BatchContentDao.getKeysForMinute ", minutePath, items.size());
+            List<ContentKey> items = S3BatchIndex.read(bytes).getKeys();
+            traces.add("S3BatchContentDao.getKeys ", indexKey, items.size());
+            return items;
         } catch (AmazonS3Exception e) {
             if (e.getStatusCode() != 404) {
-                logger.warn("unable to get index " + channel, minutePath, e);
-                traces.add("S3BatchContentDao.getKeysForMinute issue with getting keys", e);
+                logger.warn("unable to get index " + indexKey, e);
+                traces.add("S3BatchContentDao.getKeys issue with getting keys", e);
             } else {
-                traces.add("S3BatchContentDao.getKeysForMinute no keys ", minutePath);
+                traces.add("S3BatchContentDao.getKeys no keys ", indexKey);
             }
         } catch (IOException e) {
-            logger.warn("unable to get index " + channel, minutePath, e);
+            logger.warn("unable to get index " + indexKey, e);
             traces.add("issue with getting keys", e);
         } finally {
             metricsService.time(channel, "s3.get", start, "type:batch");
         }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Fetches the indexes with up to s3.batchIndex.parallel requests in flight, and passes the keys of each index
+     * to the callback in the order of indexKeys.  Fetching stops when the callback returns false.
+     */
+    private void fetchIndexes(String channel, List<String> indexKeys, Traces traces, Predicate<List<ContentKey>> callback) {
+        Deque<Future<List<ContentKey>>> pending = new ArrayDeque<>();
+        Iterator<String> iterator = indexKeys.iterator();
+        try {
+            while (iterator.hasNext() || !pending.isEmpty()) {
+                while (iterator.hasNext() && pending.size() < indexParallel) {
+                    String indexKey = iterator.next();
+                    pending.add(executorService.submit(() -> {
+                        ActiveTraces.setLocal(traces);
+                        return getKeys(channel, indexKey, traces);
+                    }));
+                }
+                if (!callback.test(pending.poll().get())) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeInterruptedException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Future<List<ContentKey>> future : pending) {
+                future.cancel(true);
+            }
+        }
     }
 
     @Override
@@ -289,36 +445,63 @@ public class S3BatchContentDao implements ContentDao {
         DateTime endTime = query.getChannelStable();
         DateTime markerTime = query.getStartKey().getTime().minusMinutes(1);
         int queryItems = Math.min(s3MaxQueryItems, query.getCount());
-        do {
-            String channel = query.getChannelName();
-            ListObjectsRequest request = new ListObjectsRequest()
-                    .withBucketName(s3BucketName.getS3BucketName())
-                    .withPrefix(channel + BATCH_INDEX)
-                    .withMarker(channel + BATCH_INDEX + TimeUtil.Unit.MINUTES.format(markerTime))
-                    .withMaxKeys(queryItems);
-            SortedSet<MinutePath> paths = listMinutePaths(channel, request, traces, false);
-
-            if (paths.isEmpty()) {
-                return keys;
-            }
-            for (MinutePath path : paths) {
-                getKeysForMinute(channel, path, traces, item -> {
-                    ContentKey contentKey = ContentKey.fromUrl(item.asText()).get();
-                    if (contentKey.compareTo(query.getStartKey()) > 0
-                            && keys.size() < query.getCount()) {
-                        keys.add(contentKey);
+        String channel = query.getChannelName();
+        Future<SortedSet<MinutePath>> nextPage = listPage(channel, markerTime, queryItems, traces);
+        try {
+            do {
+                SortedSet<MinutePath> paths = nextPage.get();
+                nextPage = null;
+                if (paths.isEmpty()) {
+                    return keys;
+                }
+                markerTime = paths.last().getTime();
+                if (markerTime.isBefore(endTime)) {
+                    nextPage = listPage(channel, markerTime, queryItems, traces);
+                }
+                List<String> indexKeys = paths.stream()
+                        .map(path -> getS3BatchIndexKey(channel, path))
+                        .collect(Collectors.toList());
+                fetchIndexes(channel, indexKeys, traces, items -> {
+                    for (ContentKey contentKey : items) {
+                        if (contentKey.compareTo(query.getStartKey()) > 0
+                                && keys.size() < query.getCount()) {
+                            keys.add(contentKey);
+                        }
                     }
+                    return keys.size() < query.getCount();
                 });
-                if (keys.size() >= query.getCount()) {
-                    break;
-                }
-                markerTime = path.getTime();
+            } while (keys.size() < query.getCount() && nextPage != null);
+        } catch (InterruptedException e) {
+            throw new RuntimeInterruptedException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            if (nextPage != null) {
+                nextPage.cancel(true);
             }
-        } while (keys.size() < query.getCount() && markerTime.isBefore(endTime));
+        }
         return keys;
     }
 
-    private SortedSet<MinutePath> listMinutePaths(String channel, ListObjectsRequest request, Traces traces, boolean iterate) {
+    /**
+     * Lists the next page of minute indexes in the background, so it overlaps reading the current page.
+     */
+    private Future<SortedSet<MinutePath>> listPage(String channel, DateTime markerTime, int queryItems, Traces traces) {
+        ListObjectsRequest request = new ListObjectsRequest()
+                .withBucketName(s3BucketName.getS3BucketName())
+                .withPrefix(channel + BATCH_INDEX)
+                .withMarker(channel + BATCH_INDEX + TimeUtil.Unit.MINUTES.format(markerTime))
+                .withMaxKeys(queryItems);
+        return executorService.submit(() -> {
+            ActiveTraces.setLocal(traces);
+            return listMinutePaths(channel, BATCH_INDEX, request, traces, false);
+        });
+    }
+
+    /**
+     * @param type BATCH_INDEX or BATCH_HOURS
+     */
+    private SortedSet<MinutePath> listMinutePaths(String channel, String type, ListObjectsRequest request, Traces traces, boolean iterate) {
         SortedSet<MinutePath> paths = new TreeSet<>();
         traces.add("S3BatchContentDao.listMinutePaths ", request.getPrefix(), request.getMarker(), iterate);
         long start = System.currentTimeMillis();
@@ -327,15 +510,15 @@ public class S3BatchContentDao implements ContentDao {
         List<S3ObjectSummary> summaries = listing.getObjectSummaries();
         for (S3ObjectSummary summary : summaries) {
             String key = summary.getKey();
-            Optional<MinutePath> pathOptional = MinutePath.fromUrl(StringUtils.substringAfter(key, channel + BATCH_INDEX));
+            Optional<MinutePath> pathOptional = MinutePath.fromUrl(StringUtils.substringAfter(key, channel + type));
             if (pathOptional.isPresent()) {
                 MinutePath path = pathOptional.get();
                 paths.add(path);
             }
         }
         if (iterate && listing.isTruncated()) {
-            request.withMarker(channel + BATCH_INDEX + TimeUtil.Unit.MINUTES.format(paths.last().getTime()));
-            paths.addAll(listMinutePaths(channel, request, traces, iterate));
+            request.withMarker(channel + type + TimeUtil.Unit.MINUTES.format(paths.last().getTime()));
+            paths.addAll(listMinutePaths(channel, type, request, traces, iterate));
         }
         traces.add("S3BatchContentDao.listMinutePaths ", paths);
         return paths;
@@ -346,6 +529,7 @@ public class S3BatchContentDao implements ContentDao {
         try {
             S3Util.delete(channel + BATCH_ITEMS, limitKey, s3BucketName.getS3BucketName(), s3Client);
             S3Util.delete(channel + BATCH_INDEX, limitKey, s3BucketName.getS3BucketName(), s3Client);
+            S3Util.delete(channel + BATCH_HOURS, limitKey, s3BucketName.getS3BucketName(), s3Client);
             logger.info("completed deleteBefore of " + channel);
         } catch (Exception e) {
             logger.warn("unable to delete " + channel + " in " + s3BucketName.getS3BucketName(), e);
@@ -379,7 +563,7 @@ public class S3BatchContentDao implements ContentDao {
         try {
             logger.debug("writing {} batch {} keys {} bytes {}", channel, path, keys.size(), bytes.length);
             writeBatchItems(channel, path, bytes);
-            writeBatchIndex(channel, path, keys);
+            writeBatchIndex(channel, path, keys, S3BatchZip.locate(bytes));
         } catch (Exception e) {
             logger.warn("unable to write batch to S3 " + channel + " " + path, e);
             throw e;
@@ -388,17 +572,98 @@ public class S3BatchContentDao implements ContentDao {
         }
     }
 
-    private void writeBatchIndex(String channel, ContentPath path, Collection<ContentKey> keys) {
+    /**
+     * Batches larger than a single part are streamed to S3 with a multipart upload, and located as they pass through.
+     */
+    @Override
+    public void writeBatch(String channel, ContentPath path, Collection<ContentKey> keys, InputStream stream) {
+        ByteBlocks head = new ByteBlocks(HEAD_BLOCK_BYTES);
+        try {
+            ByteStreams.copy(ByteStreams.limit(stream, MIN_PART_BYTES), head);
+        } catch (IOException e) {
+            throw new RuntimeException("unable to read batch " + channel + " " + path, e);
+        }
+        if (head.size() < MIN_PART_BYTES) {
+            writeBatch(channel, path, keys, head.toByteArray());
+            return;
+        }
+        ActiveTraces.getLocal().add("S3BatchContentDao.writeBatch streaming", channel, path);
+        try {
+            S3BatchZip.Locator locator = new S3BatchZip.Locator();
+            long length = uploadBatchItems(channel, path, head, stream, locator);
+            logger.debug("wrote {} batch {} keys {} bytes {}", channel, path, keys.size(), length);
+            writeBatchIndex(channel, path, keys, locator.getLocations());
+        } catch (Exception e) {
+            logger.warn("unable to write batch to S3 " + channel + " " + path, e);
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+        } finally {
+            ActiveTraces.getLocal().add("S3BatchContentDao.writeBatch completed", channel, path);
+        }
+    }
+
+    private long uploadBatchItems(String channel, ContentPath path, ByteBlocks head, InputStream stream,
+                                  S3BatchZip.Locator locator) throws IOException {
+        String batchItemsKey = getS3BatchItemsKey(channel, path);
+        String name = s3BucketName.getS3BucketName();
+        long start = System.currentTimeMillis();
+        long length = 0;
+        ObjectMetadata metadata = new ObjectMetadata();
+        if (useEncrypted) {
+            metadata.setSSEAlgorithm(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+        }
+        String uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(name, batchItemsKey, metadata)).getUploadId();
+        List<PartETag> partETags = Collections.synchronizedList(new ArrayList<>());
+        ChunkOutputStream chunkStream = new ChunkOutputStream(uploadThreads, chunk -> {
+            UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(name)
+                    .withKey(batchItemsKey)
+                    .withUploadId(uploadId)
+                    .withPartNumber(chunk.getCount())
+                    .withInputStream(chunk.getStream())
+                    .withPartSize(chunk.getLength());
+            partETags.add(s3Client.uploadPart(request).getPartETag());
+            return "ok";
+        });
+        try {
+            OutputStream output = new TeeOutputStream(chunkStream, locator);
+            head.writeTo(output);
+            length = head.size() + IOUtils.copyLarge(stream, output);
+            chunkStream.close();
+            s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(name, batchItemsKey, uploadId, partETags));
+            return length;
+        } catch (Exception e) {
+            chunkStream.abort();
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(name, batchItemsKey, uploadId));
+            throw e;
+        } finally {
+            metricsService.time(channel, "s3.put", start, length, "type:batch");
+        }
+    }
+
+    /**
+     * @param locations the [offset, length] of each item in the batch zip, which may be empty
+     */
+    private void writeBatchIndex(String channel, ContentPath path, Collection<ContentKey> keys, Map<String, long[]> locations) {
         String batchIndexKey = getS3BatchIndexKey(channel, path);
-        ObjectNode root = mapper.createObjectNode();
-        root.put("id", path.toUrl());
-        ArrayNode items = root.putArray("items");
-        for (ContentKey key : keys) {
-            items.add(key.toUrl());
-        }
-        String index = root.toString();
-        logger.trace("index is {} {}", batchIndexKey, index);
-        byte[] bytes = index.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes;
+        if (binaryIndex) {
+            bytes = S3BatchIndex.write(keys, locations);
+        } else {
+            ObjectNode root = mapper.createObjectNode();
+            root.put("id", path.toUrl());
+            ArrayNode items = root.putArray("items");
+            for (ContentKey key : keys) {
+                items.add(key.toUrl());
+            }
+            if (!locations.isEmpty()) {
+                ObjectNode locationsNode = root.putObject("locations");
+                for (Map.Entry<String, long[]> entry : locations.entrySet()) {
+                    locationsNode.putArray(entry.getKey()).add(entry.getValue()[0]).add(entry.getValue()[1]);
+                }
+            }
+            bytes = root.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        logger.trace("index is {} {} bytes", batchIndexKey, bytes.length);
         putObject(channel, batchIndexKey, bytes);
     }
 
@@ -431,4 +696,11 @@ public class S3BatchContentDao implements ContentDao {
         return channel + BATCH_INDEX + path.toUrl();
     }
 
+    /**
+     * Hour indexes are named by the first minute of the hour.
+     */
+    private String getS3BatchHourKey(String channel, DateTime hour) {
+        return channel + BATCH_HOURS + new MinutePath(hour).toUrl();
+    }
+
 }
@@ -0,0 +1,169 @@
+package com.flightstats.hub.dao.aws;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.flightstats.hub.model.ContentKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The index of an S3 batch minute, with the keys in sorted order, and the location of each item in the batch zip
+ * when it is known.
+ * <p>
+ * The binary form is a 4 byte magic number, a 1 byte version and an int count, followed by
+ * [long epochMillis][short hashLength][hash][long offset][long length] for each key, with an offset of -1 when the
+ * location is unknown.  Ints are big-endian.
+ * The JSON form of {"id": path, "items": [key...], "locations": {key: [offset, length]}} written previously is still read.
+ * <p>
+ * Indexes are written as JSON unless s3.batchIndex.binary is true, which should only be set once every hub server
+ * reads the binary form.  Both forms are always read.
+ */
+class S3BatchIndex {
+
+    static final int MAGIC = 0x48424958;
+    private static final byte VERSION = 1;
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final ContentKey[] keys;
+    private final long[] offsets;
+    private final long[] lengths;
+
+    private S3BatchIndex(ContentKey[] keys, long[] offsets, long[] lengths) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    /**
+     * @param locations the [offset, length] of each item by key url, which may be empty
+     */
+    static byte[] write(Collection<ContentKey> keys, Map<String, long[]> locations) {
+        SortedSet<ContentKey> sorted = new TreeSet<>(keys);
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(16 + sorted.size() * 40);
+            DataOutputStream output = new DataOutputStream(baos);
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            output.writeInt(sorted.size());
+            for (ContentKey key : sorted) {
+                byte[] hash = key.getHash().getBytes(StandardCharsets.UTF_8);
+                output.writeLong(key.getMillis());
+                output.writeShort(hash.length);
+                output.write(hash);
+                long[] location = locations.get(key.toUrl());
+                output.writeLong(location == null ? -1 : location[0]);
+                output.writeLong(location == null ? 0 : location[1]);
+            }
+            output.flush();
+            return baos.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static S3BatchIndex read(byte[] bytes) throws IOException {
+        if (bytes.length >= 4 && ByteBuffer.wrap(bytes).getInt() == MAGIC) {
+            return readBinary(bytes);
+        }
+        return readJson(bytes);
+    }
+
+    private static S3BatchIndex readBinary(byte[] bytes) throws IOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            buffer.getInt();
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("unsupported batch index version " + version);
+            }
+            int count = buffer.getInt();
+            ContentKey[] keys = new ContentKey[count];
+            long[] offsets = new long[count];
+            long[] lengths = new long[count];
+            for (int i = 0; i < count; i++) {
+                long millis = buffer.getLong();
+                byte[] hash = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(hash);
+                keys[i] = new ContentKey(millis, new String(hash, StandardCharsets.UTF_8));
+                offsets[i] = buffer.getLong();
+                lengths[i] = buffer.getLong();
+            }
+            return new S3BatchIndex(keys, offsets, lengths);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated batch index", e);
+        }
+    }
+
+    /**
+     * Reads the JSON form with a streaming parser.
+     */
+    private static S3BatchIndex readJson(byte[] bytes) throws IOException {
+        SortedSet<ContentKey> items = new TreeSet<>();
+        Map<String, long[]> locations = new HashMap<>();
+        try (JsonParser parser = jsonFactory.createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("not a batch index");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (field.equals("items") && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                        items.add(ContentKey.fromUrl(parser.getText()).get());
+                    }
+                } else if (field.equals("locations") && token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String key = parser.getCurrentName();
+                        parser.nextToken();
+                        parser.nextToken();
+                        long offset = parser.getLongValue();
+                        parser.nextToken();
+                        long length = parser.getLongValue();
+                        parser.nextToken();
+                        locations.put(key, new long[]{offset, length});
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        ContentKey[] keys = items.toArray(new ContentKey[items.size()]);
+        long[] offsets = new long[keys.length];
+        long[] lengths = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            long[] location = locations.get(keys[i].toUrl());
+            offsets[i] = location == null ? -1 : location[0];
+            lengths[i] = location == null ? 0 : location[1];
+        }
+        return new S3BatchIndex(keys, offsets, lengths);
+    }
+
+    /**
+     * @return the keys in ascending order
+     */
+    List<ContentKey> getKeys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    boolean contains(ContentKey key) {
+        return Arrays.binarySearch(keys, key) >= 0;
+    }
+
+    /**
+     * @return the [offset, length] of the item, or null if the item or its location is unknown
+     */
+    long[] getLocation(ContentKey key) {
+        int index = Arrays.binarySearch(keys, key);
+        if (index < 0 || offsets[index] < 0) {
+            return null;
+        }
+        return new long[]{offsets[index], lengths[index]};
+    }
+}
@@ -10,6 +10,7 @@ import com.flightstats.hub.metrics.ActiveTraces;
 import com.flightstats.hub.model.ContentKey;
 import com.flightstats.hub.model.MinutePath;
 import com.flightstats.hub.rest.RestClient;
+import com.flightstats.hub.util.HubUtils;
 import com.sun.jersey.api.client.ClientResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,15 +39,18 @@ public class S3BatchResource {
                 .resource(batchUrl + "&location=CACHE_WRITE")
                 .accept("application/zip")
                 .get(ClientResponse.class);
-        if (response.getStatus() != 200) {
-             logger.warn("unable to get data for {} {}", channel, response);
-             return false;
+        try {
+            if (response.getStatus() != 200) {
+                logger.warn("unable to get data for {} {}", channel, response);
+                return false;
+            }
+            ActiveTraces.getLocal().add("S3BatchResource.getAndWriteBatch got response");
+            contentDao.writeBatch(channel, path, keys, response.getEntityInputStream());
+            ActiveTraces.getLocal().add("S3BatchResource.getAndWriteBatch completed");
+            return true;
+        } finally {
+            HubUtils.close(response);
         }
-        ActiveTraces.getLocal().add("S3BatchResource.getAndWriteBatch got response");
-        byte[] bytes = response.getEntity(byte[].class);
-        contentDao.writeBatch(channel, path, keys, bytes);
-        ActiveTraces.getLocal().add("S3BatchResource.getAndWriteBatch completed");
-        return true;
     }
 
     /**
@@ -0,0 +1,140 @@
+package com.flightstats.hub.dao.aws;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.app.HubServices;
+import com.flightstats.hub.cluster.*;
+import com.flightstats.hub.dao.ChannelService;
+import com.flightstats.hub.model.ChannelConfig;
+import com.flightstats.hub.model.ContentPath;
+import com.flightstats.hub.model.MinutePath;
+import com.flightstats.hub.replication.S3Batch;
+import com.flightstats.hub.spoke.SpokeStore;
+import com.flightstats.hub.util.Sleeper;
+import com.flightstats.hub.util.TimeUtil;
+import com.flightstats.hub.webhook.WebhookService;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.curator.framework.CuratorFramework;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolls up the minute indexes of batch channels into hour indexes, once the hour can no longer receive batches.
+ * An hour is only rolled up after the channel's S3Batch webhook has completed every minute of it, so batches
+ * which are written late are never left out of the hour index.
+ */
+@Singleton
+public class S3BatchRollup {
+
+    static final String LAST_ROLLUP_HOUR = "/S3BatchRollupLastHour/";
+    private final static Logger logger = LoggerFactory.getLogger(S3BatchRollup.class);
+    private static final String LEADER_PATH = "/S3BatchRollupService";
+
+    private final int periodMinutes = HubProperties.getProperty("s3BatchRollup.periodMinutes", 15);
+    private final int backfillHours = HubProperties.getProperty("s3BatchRollup.backfillHours", 24);
+
+    @Inject
+    private LastContentPath lastContentPath;
+    @Inject
+    private ChannelService channelService;
+    @Inject
+    private WebhookService webhookService;
+    @Inject
+    private S3BatchContentDao s3BatchContentDao;
+    @Inject
+    private ZooKeeperState zooKeeperState;
+    @Inject
+    private CuratorFramework curator;
+
+    public S3BatchRollup() {
+        if (HubProperties.getProperty("s3BatchRollup.run", true)) {
+            HubServices.register(new S3BatchRollupService(), HubServices.TYPE.AFTER_HEALTHY_START, HubServices.TYPE.PRE_STOP);
+        }
+    }
+
+    private void rollupChannels(Leadership leadership) {
+        try {
+            DateTime endHour = getEndHour(TimeUtil.now());
+            logger.info("rolling up batch hours before {}", endHour);
+            for (ChannelConfig channel : channelService.getChannels()) {
+                if (!leadership.hasLeadership()) {
+                    return;
+                }
+                if (channel.isBatch() || channel.isBoth()) {
+                    String name = channel.getDisplayName();
+                    ContentPath lastCompleted = webhookService.getLastCompleted(S3Batch.getGroupName(name));
+                    rollupChannel(name, getEndHour(endHour, lastCompleted), leadership);
+                }
+            }
+            logger.info("completed rolling up batch hours");
+        } catch (Exception e) {
+            logger.error("Error: ", e);
+        }
+    }
+
+    private void rollupChannel(String channel, DateTime endHour, Leadership leadership) throws Exception {
+        if (endHour == null) {
+            logger.debug("no completed batches for {}", channel);
+            return;
+        }
+        MinutePath defaultPath = new MinutePath(endHour.minusHours(backfillHours + 1));
+        MinutePath lastPath = (MinutePath) lastContentPath.get(channel, defaultPath, LAST_ROLLUP_HOUR);
+        DateTime hour = lastPath.getTime().plusHours(1);
+        while (hour.isBefore(endHour) && leadership.hasLeadership()) {
+            int keys = s3BatchContentDao.rollupHour(channel, hour);
+            logger.debug("rolled up {} {} with {} keys", channel, hour, keys);
+            lastContentPath.updateIncrease(new MinutePath(hour), channel, LAST_ROLLUP_HOUR);
+            hour = hour.plusHours(1);
+        }
+    }
+
+    /**
+     * Batches are written from spoke, so an hour is complete once it is past the spoke ttl.
+     */
+    static DateTime getEndHour(DateTime now) {
+        DateTime complete = now.minusMinutes(HubProperties.getSpokeTtlMinutes(SpokeStore.WRITE) + 60);
+        return TimeUtil.Unit.HOURS.round(complete);
+    }
+
+    /**
+     * Limits the end hour to the hour of the minute after the batch webhook's last completed minute.
+     *
+     * @return null if the webhook has not completed any minutes
+     */
+    static DateTime getEndHour(DateTime endHour, ContentPath lastCompleted) {
+        if (lastCompleted == null) {
+            return null;
+        }
+        DateTime completedHour = TimeUtil.Unit.HOURS.round(lastCompleted.getTime().plusMinutes(1));
+        return completedHour.isBefore(endHour) ? completedHour : endHour;
+    }
+
+    private class S3BatchRollupService extends AbstractScheduledService implements Lockable {
+
+        @Override
+        protected void runOneIteration() throws Exception {
+            CuratorLock curatorLock = new CuratorLock(curator, zooKeeperState, LEADER_PATH);
+            curatorLock.runWithLock(this, 1, TimeUnit.SECONDS);
+        }
+
+        protected Scheduler scheduler() {
+            return Scheduler.newFixedDelaySchedule(0, periodMinutes, TimeUnit.MINUTES);
+        }
+
+        @Override
+        public void takeLeadership(Leadership leadership) throws Exception {
+            logger.info("taking leadership");
+            while (leadership.hasLeadership()) {
+                long start = System.currentTimeMillis();
+                rollupChannels(leadership);
+                long sleep = TimeUnit.MINUTES.toMillis(periodMinutes) - (System.currentTimeMillis() - start);
+                Sleeper.sleep(Math.max(0, sleep));
+            }
+            logger.info("lost leadership");
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.flightstats.hub.dao.aws;
+
+import com.flightstats.hub.dao.ContentMarshaller;
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.model.ContentKey;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Locates the items within an S3 batch zip, so a single item can be read with a ranged GET instead of the whole minute.
+ * An item's location is the offset of its local file header, and the length through the end of its compressed data.
+ * Zip64 batches are not located, and are read whole.
+ */
+class S3BatchZip {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL = 0x06054b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int DATA_DESCRIPTOR_LENGTH = 16;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int END_OF_CENTRAL_LENGTH = 22;
+
+    /**
+     * @return the [offset, length] of each entry by name, or an empty map if the zip can not be located
+     */
+    static Map<String, long[]> locate(byte[] zip) {
+        Map<String, long[]> locations = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        int end = -1;
+        for (int i = zip.length - END_OF_CENTRAL_LENGTH; i >= Math.max(0, zip.length - END_OF_CENTRAL_LENGTH - 0xFFFF); i--) {
+            if (buffer.getInt(i) == END_OF_CENTRAL) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return locations;
+        }
+        int entries = unsignedShort(buffer, end + 10);
+        long central = unsignedInt(buffer, end + 16);
+        if (entries == 0xFFFF || central == 0xFFFFFFFFL) {
+            return locations;
+        }
+        int position = (int) central;
+        for (int i = 0; i < entries; i++) {
+            if (buffer.getInt(position) != CENTRAL_HEADER) {
+                return new HashMap<>();
+            }
+            long compressed = unsignedInt(buffer, position + 20);
+            int nameLength = unsignedShort(buffer, position + 28);
+            int extraLength = unsignedShort(buffer, position + 30);
+            int commentLength = unsignedShort(buffer, position + 32);
+            long local = unsignedInt(buffer, position + 42);
+            String name = new String(zip, position + 46, nameLength, StandardCharsets.UTF_8);
+            long localLength = LOCAL_HEADER_LENGTH + unsignedShort(buffer, (int) local + 26) + unsignedShort(buffer, (int) local + 28);
+            locations.put(name, new long[]{local, localLength + compressed});
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return locations;
+    }
+
+    /**
+     * @param entry the bytes of a single located entry
+     */
+    static Content read(ContentKey key, byte[] entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(entry).order(ByteOrder.LITTLE_ENDIAN);
+        if (entry.length < LOCAL_HEADER_LENGTH || buffer.getInt(0) != LOCAL_HEADER) {
+            throw new IOException("not a zip entry " + key);
+        }
+        int method = unsignedShort(buffer, 8);
+        int nameLength = unsignedShort(buffer, 26);
+        int extraLength = unsignedShort(buffer, 28);
+        int dataStart = LOCAL_HEADER_LENGTH + nameLength + extraLength;
+        byte[] extra = Arrays.copyOfRange(entry, LOCAL_HEADER_LENGTH + nameLength, dataStart);
+        byte[] data;
+        if (method == ZipEntry.STORED) {
+            data = Arrays.copyOfRange(entry, dataStart, entry.length);
+        } else if (method == ZipEntry.DEFLATED) {
+            ByteArrayInputStream compressed = new ByteArrayInputStream(entry, dataStart, entry.length - dataStart);
+            data = ByteStreams.toByteArray(new InflaterInputStream(compressed, new Inflater(true)));
+        } else {
+            throw new IOException("unsupported zip method " + method + " " + key);
+        }
+        Content.Builder builder = Content.builder()
+                .withContentKey(key);
+        ContentMarshaller.setMetaData(new String(extra), builder);
+        builder.withData(data);
+        return builder.build();
+    }
+
+    /**
+     * Locates the entries of a zip as it is written through, without holding the zip in memory.
+     * Entries written with a data descriptor are found by scanning for a descriptor whose compressed size matches
+     * the bytes since the entry's data started.  Locating stops at the central directory, or at an entry it can not
+     * follow, and the entries found until then are kept.
+     */
+    static class Locator extends OutputStream {
+
+        private enum State {HEADER, NAME, DATA, SCAN, DONE}
+
+        private final Map<String, long[]> locations = new HashMap<>();
+        private final byte[] header = new byte[LOCAL_HEADER_LENGTH];
+        private final byte[] window = new byte[DATA_DESCRIPTOR_LENGTH];
+        private State state = State.HEADER;
+        private long position;
+        private int index;
+        private long entryStart;
+        private long dataStart;
+        private long remaining;
+        private int headerLength;
+        private byte[] name;
+
+        @Override
+        public void write(int b) {
+            switch (state) {
+                case HEADER:
+                    header[index++] = (byte) b;
+                    if (index == LOCAL_HEADER_LENGTH) {
+                        readHeader();
+                    }
+                    break;
+                case NAME:
+                    if (index < name.length) {
+                        name[index] = (byte) b;
+                    }
+                    index++;
+                    if (index == headerLength - LOCAL_HEADER_LENGTH) {
+                        startData(position + 1);
+                    }
+                    break;
+                case DATA:
+                    remaining--;
+                    if (remaining == 0) {
+                        endEntry(position + 1 - dataStart);
+                    }
+                    break;
+                case SCAN:
+                    window[(int) (position & 15)] = (byte) b;
+                    scan();
+                    break;
+                default:
+            }
+            position++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            int end = offset + length;
+            while (offset < end) {
+                if (state == State.DONE) {
+                    position += end - offset;
+                    return;
+                }
+                if (state == State.DATA && remaining > 1) {
+                    int skip = (int) Math.min(remaining - 1, end - offset);
+                    remaining -= skip;
+                    position += skip;
+                    offset += skip;
+                } else if (state == State.SCAN) {
+                    offset = scan(bytes, offset, end);
+                } else {
+                    write(bytes[offset++]);
+                }
+            }
+        }
+
+        private void readHeader() {
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != LOCAL_HEADER) {
+                state = State.DONE;
+                return;
+            }
+            entryStart = position + 1 - LOCAL_HEADER_LENGTH;
+            int nameLength = unsignedShort(buffer, 26);
+            headerLength = LOCAL_HEADER_LENGTH + nameLength + unsignedShort(buffer, 28);
+            name = new byte[nameLength];
+            index = 0;
+            if (headerLength == LOCAL_HEADER_LENGTH) {
+                startData(position + 1);
+            } else {
+                state = State.NAME;
+            }
+        }
+
+        private void startData(long start) {
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            boolean descriptor = (unsignedShort(buffer, 6) & 8) != 0;
+            dataStart = start;
+            if (!descriptor) {
+                remaining = unsignedInt(buffer, 18);
+                state = State.DATA;
+                if (remaining == 0) {
+                    endEntry(0);
+                }
+            } else if (unsignedShort(buffer, 8) == ZipEntry.DEFLATED) {
+                state = State.SCAN;
+            } else {
+                state = State.DONE;
+            }
+        }
+
+        /**
+         * Searches the bytes for a data descriptor of the current entry.  Only a descriptor which started in an
+         * earlier write goes through the window, and the rest of the bytes are searched in place.
+         *
+         * @return the offset after the descriptor, or end if there is none
+         */
+        private int scan(byte[] bytes, int offset, int end) {
+            int from = offset;
+            int head = Math.min(end, offset + DATA_DESCRIPTOR_LENGTH - 1);
+            while (offset < head && state == State.SCAN) {
+                write(bytes[offset++]);
+            }
+            if (state != State.SCAN) {
+                return offset;
+            }
+            for (int i = from; i + DATA_DESCRIPTOR_LENGTH <= end; i++) {
+                if (bytes[i] == 0x50 && bytes[i + 1] == 0x4b && bytes[i + 2] == 0x07 && bytes[i + 3] == 0x08) {
+                    long descriptorStart = position - (offset - i);
+                    int compressed = ByteBuffer.wrap(bytes, i + 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                    if (descriptorStart >= dataStart && compressed == (int) (descriptorStart - dataStart)) {
+                        int next = i + DATA_DESCRIPTOR_LENGTH;
+                        position += next - offset;
+                        endEntry(descriptorStart - dataStart);
+                        return next;
+                    }
+                }
+            }
+            int tail = end - DATA_DESCRIPTOR_LENGTH + 1;
+            if (tail <= offset) {
+                while (offset < end && state == State.SCAN) {
+                    write(bytes[offset++]);
+                }
+                return offset;
+            }
+            //every descriptor ending in this write has been searched, and one which continues into the next write
+            //starts within the last 15 bytes, which are kept in the window
+            position += tail - offset;
+            for (int i = tail; i < end; i++) {
+                window[(int) (position & 15)] = bytes[i];
+                position++;
+            }
+            return end;
+        }
+
+        /**
+         * Checks whether the last 16 bytes are a data descriptor for the current entry.
+         */
+        private void scan() {
+            long descriptorStart = position - DATA_DESCRIPTOR_LENGTH + 1;
+            if (descriptorStart < dataStart || windowInt(descriptorStart) != DATA_DESCRIPTOR) {
+                return;
+            }
+            long compressed = descriptorStart - dataStart;
+            if (windowInt(descriptorStart + 8) == (int) compressed) {
+                endEntry(compressed);
+            }
+        }
+
+        private int windowInt(long start) {
+            int value = 0;
+            for (int i = 3; i >= 0; i--) {
+                value = (value << 8) | (window[(int) ((start + i) & 15)] & 0xFF);
+            }
+            return value;
+        }
+
+        private void endEntry(long compressed) {
+            locations.put(new String(name, StandardCharsets.UTF_8), new long[]{entryStart, headerLength + compressed});
+            state = State.HEADER;
+            index = 0;
+        }
+
+        /**
+         * @return the [offset, length] of each entry located by name
+         */
+        Map<String, long[]> getLocations() {
+            return locations;
+        }
+    }
+
+    private static int unsignedShort(ByteBuffer buffer, int index) {
+        return buffer.getShort(index) & 0xFFFF;
+    }
+
+    private static long unsignedInt(ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & 0xFFFFFFFFL;
+    }
+}
@@ -16,16 +16,20 @@ import com.flightstats.hub.util.TimeUtil;
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @SuppressWarnings("Duplicates")
 @Singleton
@@ -72,30 +76,31 @@ public class S3LargeContentDao implements ContentDao {
         long start = System.currentTimeMillis();
         int length = 0;
         List<PartETag> partETags = Collections.synchronizedList(new ArrayList<>());
+        Map<Integer, Long> partLengths = new ConcurrentHashMap<>();
         String s3Key = getS3ContentKey(channelName, key, content.isHistorical());
         String name = s3BucketName.getS3BucketName();
         String uploadId = "";
         boolean completed = false;
+        ChunkOutputStream outputStream = null;
         try {
             ObjectMetadata metadata = S3SingleContentDao.createObjectMetadata(content, useEncrypted);
             InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(name, s3Key, metadata);
             InitiateMultipartUploadResult initResponse = s3Client.initiateMultipartUpload(initRequest);
             uploadId = initResponse.getUploadId();
-            ChunkOutputStream outputStream = new ChunkOutputStream(content.getThreads(), chunk -> {
+            outputStream = new ChunkOutputStream(content.getThreads(), chunk -> {
                 try {
-                    byte[] bytes = chunk.getBytes();
-                    logger.info("got bytes {} {}", s3Key, bytes.length);
-                    ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+                    logger.info("got bytes {} {}", s3Key, chunk.getLength());
                     UploadPartRequest uploadRequest = new UploadPartRequest()
                             .withBucketName(name)
                             .withKey(s3Key)
                             .withUploadId(initResponse.getUploadId())
                             .withPartNumber(chunk.getCount())
-                            .withInputStream(bais)
-                            .withPartSize(bytes.length);
+                            .withInputStream(chunk.getStream())
+                            .withPartSize(chunk.getLength());
                     UploadPartResult uploadPart = s3Client.uploadPart(uploadRequest);
                     partETags.add(uploadPart.getPartETag());
-                    logger.info("wrote chunk {} {} {}", s3Key, chunk.getCount(), bytes.length);
+                    partLengths.put(chunk.getCount(), (long) chunk.getLength());
+                    logger.info("wrote chunk {} {} {}", s3Key, chunk.getCount(), chunk.getLength());
                     return "ok";
                 } catch (Exception e) {
                     logger.warn("what happened POST to " + channelName + " for chunk " + chunk.getCount(), e);
@@ -108,12 +113,19 @@ public class S3LargeContentDao implements ContentDao {
             ActiveTraces.getLocal().add("S3LargeContentDao.write processed", copied);
             logger.info("before complete key {} with {} parts", s3Key, partETags.size());
             outputStream.close();
+            verifyParts(copied, partETags, partLengths);
             CompleteMultipartUploadRequest compRequest = new CompleteMultipartUploadRequest(name, s3Key, uploadId, partETags);
-            s3Client.completeMultipartUpload(compRequest);
+            CompleteMultipartUploadResult result = s3Client.completeMultipartUpload(compRequest);
             S3ResponseMetadata completedMetaData = s3Client.getCachedResponseMetadata(compRequest);
             logger.info("completed key {} request id {} with {} parts", s3Key, completedMetaData.getRequestId(), partETags.size());
             completed = true;
             content.setSize(copied);
+            String expectedETag = getMultipartETag(partETags);
+            if (expectedETag != null && !expectedETag.equals(StringUtils.remove(result.getETag(), '"'))) {
+                String message = "object does not have the expected etag " + expectedETag + ", found " + result.getETag();
+                logger.warn(message);
+                throw new RuntimeException(message);
+            }
             long s3Length = getLength(s3Key, name);
             if (s3Length != copied) {
                 String message = "object is not the correct size. expected " + copied + ", found " + s3Length;
@@ -123,6 +135,9 @@ public class S3LargeContentDao implements ContentDao {
             return key;
         } catch (Exception e) {
             logger.warn("unable to write large item to S3 " + channelName + " " + key, e);
+            if (outputStream != null) {
+                outputStream.abort();
+            }
             ActiveTraces.getLocal().add("S3LargeContentDao.error ", e.getMessage());
             if (StringUtils.isNotBlank(uploadId)) {
                 if (completed) {
@@ -140,13 +155,57 @@ public class S3LargeContentDao implements ContentDao {
         }
     }
 
-    private long getLength(String s3Key, String name) throws IOException {
-        GetObjectRequest request = new GetObjectRequest(name, s3Key);
-        try (S3Object object = s3Client.getObject(request)) {
-            ObjectMetadata metadata = object.getObjectMetadata();
-            long contentLength = metadata.getContentLength();
+    /**
+     * Checks that the uploaded parts are numbered 1 to n with no gaps, and hold all of the copied bytes,
+     * before the upload is completed.
+     */
+    static void verifyParts(long copied, List<PartETag> partETags, Map<Integer, Long> partLengths) {
+        partETags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+        long total = 0;
+        for (int i = 0; i < partETags.size(); i++) {
+            int partNumber = partETags.get(i).getPartNumber();
+            Long partLength = partLengths.get(partNumber);
+            if (partNumber != i + 1 || partLength == null) {
+                throw new RuntimeException("missing part " + (i + 1) + " of " + partETags.size());
+            }
+            total += partLength;
+        }
+        if (total != copied) {
+            throw new RuntimeException("parts are not the correct size. expected " + copied + ", found " + total);
+        }
+    }
+
+    /**
+     * S3 gives a multipart object the etag of the md5 of its parts' md5s, followed by the number of parts.
+     *
+     * @return the expected etag, or null if the parts' etags are not md5s, as with KMS encryption
+     */
+    static String getMultipartETag(List<PartETag> partETags) {
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        for (PartETag partETag : partETags) {
+            String eTag = StringUtils.remove(partETag.getETag(), '"');
+            if (eTag == null || eTag.length() != 32) {
+                return null;
+            }
+            try {
+                digest.update(Hex.decodeHex(eTag.toCharArray()));
+            } catch (DecoderException e) {
+                return null;
+            }
+        }
+        return Hex.encodeHexString(digest.digest()) + "-" + partETags.size();
+    }
+
+    /**
+     * Reads the length with a HEAD request, so the object is not downloaded again.
+     */
+    private long getLength(String s3Key, String name) {
+        GetObjectMetadataRequest request = new GetObjectMetadataRequest(name, s3Key);
+        try {
+            long contentLength = s3Client.getObjectMetadata(request).getContentLength();
             S3ResponseMetadata responseMetadata = s3Client.getCachedResponseMetadata(request);
-            logger.info("{} {} get content length {} {}", name, s3Key, contentLength, responseMetadata.getRequestId());
+            logger.info("{} {} head content length {} {}", name, s3Key, contentLength,
+                    responseMetadata == null ? null : responseMetadata.getRequestId());
             ActiveTraces.getLocal().add("S3LargeContentDao.write completed length ", contentLength);
             return contentLength;
         } catch (Exception e) {
@@ -0,0 +1,335 @@
+package com.flightstats.hub.dao.aws;
+
+import com.flightstats.hub.model.ChannelContentKey;
+import com.flightstats.hub.model.ContentKey;
+import com.google.common.base.Optional;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An append-only journal of the keys waiting to be written to S3, so a backlog is held on disk instead of in memory,
+ * and survives a restart.
+ * <p>
+ * Each channel has a directory of numbered segment files, with one key per line.
+ * Keys are read back a few at a time, taking from each channel with pending keys in turn, so a busy channel
+ * does not hold up the others.  A segment is deleted once it has been read and all of its keys completed.
+ * On startup, all existing segments are replayed, so a key may be written more than once.
+ */
+class S3WriteJournal {
+
+    private final static Logger logger = LoggerFactory.getLogger(S3WriteJournal.class);
+
+    private static final String SUFFIX = ".journal";
+    private static final int SEGMENT_KEYS = 10_000;
+    private static final int READ_AHEAD = 100;
+
+    private final File root;
+    private final long maxKeys;
+    private final Map<String, ChannelJournal> channels = new ConcurrentHashMap<>();
+    private final BlockingQueue<ChannelJournal> ready = new LinkedBlockingQueue<>();
+    private final AtomicLong size = new AtomicLong();
+
+    S3WriteJournal(File root, long maxKeys) {
+        this.root = root;
+        this.maxKeys = maxKeys;
+        root.mkdirs();
+        File[] dirs = root.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                ChannelJournal journal = new ChannelJournal(dir.getName(), dir);
+                channels.put(journal.channel, journal);
+                journal.markReady();
+            }
+        }
+        logger.info("replaying {} keys from {}", size.get(), root);
+    }
+
+    /**
+     * @return false if the journal is full, or the key could not be written
+     */
+    boolean add(ChannelContentKey key) {
+        if (size.get() >= maxKeys) {
+            return false;
+        }
+        ChannelJournal journal = channels.computeIfAbsent(key.getChannel(),
+                channel -> new ChannelJournal(channel, new File(root, channel)));
+        try {
+            journal.append(key.getContentKey());
+        } catch (IOException e) {
+            logger.warn("unable to journal " + key, e);
+            return false;
+        }
+        journal.markReady();
+        return true;
+    }
+
+    /**
+     * @return the next key, which must be passed to complete once it has been handled
+     */
+    Entry take(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            ChannelJournal journal = ready.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (journal == null) {
+                return null;
+            }
+            Entry entry = journal.next();
+            if (entry != null) {
+                return entry;
+            }
+        }
+    }
+
+    void complete(Entry entry) {
+        entry.journal.complete(entry.segment);
+    }
+
+    /**
+     * @return the number of keys journaled and not yet completed
+     */
+    long size() {
+        return size.get();
+    }
+
+    void close() {
+        for (ChannelJournal journal : channels.values()) {
+            journal.close();
+        }
+    }
+
+    static class Entry {
+        private final ChannelJournal journal;
+        private final long segment;
+        private final ChannelContentKey key;
+
+        private Entry(ChannelJournal journal, long segment, ChannelContentKey key) {
+            this.journal = journal;
+            this.segment = segment;
+            this.key = key;
+        }
+
+        ChannelContentKey getKey() {
+            return key;
+        }
+    }
+
+    private class ChannelJournal {
+
+        private final String channel;
+        private final File dir;
+        private final Deque<Entry> buffer = new ArrayDeque<>();
+        private final Map<Long, Integer> outstanding = new HashMap<>();
+        private boolean queued;
+
+        private long writeSegment;
+        private long writeOffset;
+        private int writeKeys;
+        private FileOutputStream output;
+
+        private long readSegment;
+        private long readOffset;
+        private RandomAccessFile input;
+
+        ChannelJournal(String channel, File dir) {
+            this.channel = channel;
+            this.dir = dir;
+            dir.mkdirs();
+            SortedSet<Long> segments = getSegments();
+            readSegment = segments.isEmpty() ? 0 : segments.first();
+            writeSegment = segments.isEmpty() ? 0 : segments.last() + 1;
+            for (Long segment : segments) {
+                long keys = countKeys(segmentFile(segment));
+                outstanding.put(segment, (int) keys);
+                size.addAndGet(keys);
+            }
+        }
+
+        synchronized void append(ContentKey key) throws IOException {
+            if (output == null || writeKeys >= SEGMENT_KEYS) {
+                roll();
+            }
+            byte[] bytes = (key.toUrl() + "\n").getBytes(StandardCharsets.UTF_8);
+            output.write(bytes);
+            writeOffset += bytes.length;
+            writeKeys++;
+            outstanding.merge(writeSegment, 1, Integer::sum);
+            size.incrementAndGet();
+        }
+
+        private void roll() throws IOException {
+            if (output != null) {
+                output.close();
+                writeSegment++;
+            }
+            output = new FileOutputStream(segmentFile(writeSegment), true);
+            writeOffset = 0;
+            writeKeys = 0;
+        }
+
+        synchronized void markReady() {
+            if (!queued && hasPending()) {
+                queued = true;
+                ready.add(this);
+            }
+        }
+
+        /**
+         * Takes the next key, and puts the channel back in line if it has more.
+         */
+        synchronized Entry next() {
+            queued = false;
+            if (buffer.isEmpty()) {
+                fill();
+            }
+            Entry entry = buffer.poll();
+            markReady();
+            return entry;
+        }
+
+        private boolean hasPending() {
+            return !buffer.isEmpty() || readSegment < writeSegment
+                    || (output != null && readOffset < writeOffset);
+        }
+
+        private void fill() {
+            while (buffer.isEmpty() && hasPending()) {
+                try {
+                    if (input == null) {
+                        File file = segmentFile(readSegment);
+                        if (!file.exists()) {
+                            //completed and deleted before a restart
+                            nextReadSegment();
+                            continue;
+                        }
+                        input = new RandomAccessFile(file, "r");
+                    }
+                    long limit = readSegment == writeSegment ? writeOffset : input.length();
+                    if (readOffset < limit) {
+                        readLines(limit);
+                    }
+                    if (buffer.isEmpty() && readSegment < writeSegment) {
+                        nextReadSegment();
+                    }
+                } catch (IOException e) {
+                    logger.warn("unable to read journal " + channel + " " + readSegment, e);
+                    nextReadSegment();
+                }
+            }
+        }
+
+        private void readLines(long limit) throws IOException {
+            byte[] bytes = new byte[(int) Math.min(limit - readOffset, 64 * 1024)];
+            input.seek(readOffset);
+            input.readFully(bytes);
+            int start = 0;
+            for (int i = 0; i < bytes.length && buffer.size() < READ_AHEAD; i++) {
+                if (bytes[i] == '\n') {
+                    String line = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+                    Optional<ContentKey> key = ContentKey.fromUrl(line);
+                    if (key.isPresent()) {
+                        buffer.add(new Entry(this, readSegment, new ChannelContentKey(channel, key.get())));
+                    } else {
+                        logger.warn("invalid journal entry {} {}", channel, line);
+                        complete(readSegment);
+                    }
+                    start = i + 1;
+                }
+            }
+            if (start == 0 && readSegment < writeSegment) {
+                //a partial line, left by a crash
+                readOffset = limit;
+            } else {
+                readOffset += start;
+            }
+        }
+
+        private void nextReadSegment() {
+            closeInput();
+            long finished = readSegment;
+            readSegment++;
+            readOffset = 0;
+            deleteIfDone(finished);
+        }
+
+        synchronized void complete(long segment) {
+            Integer count = outstanding.merge(segment, -1, Integer::sum);
+            size.decrementAndGet();
+            if (count != null && count <= 0) {
+                deleteIfDone(segment);
+            }
+        }
+
+        private void deleteIfDone(long segment) {
+            if (segment < readSegment && segment < writeSegment && outstanding.getOrDefault(segment, 0) <= 0) {
+                outstanding.remove(segment);
+                FileUtils.deleteQuietly(segmentFile(segment));
+            }
+        }
+
+        synchronized void close() {
+            closeInput();
+            try {
+                if (output != null) {
+                    output.close();
+                }
+            } catch (IOException e) {
+                logger.info("unable to close journal " + channel, e);
+            }
+        }
+
+        private void closeInput() {
+            try {
+                if (input != null) {
+                    input.close();
+                }
+            } catch (IOException e) {
+                logger.info("unable to close journal " + channel, e);
+            }
+            input = null;
+        }
+
+        private SortedSet<Long> getSegments() {
+            SortedSet<Long> segments = new TreeSet<>();
+            String[] names = dir.list((d, name) -> name.endsWith(SUFFIX));
+            if (names != null) {
+                for (String name : names) {
+                    segments.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                }
+            }
+            return segments;
+        }
+
+        private long countKeys(File file) {
+            try {
+                byte[] bytes = FileUtils.readFileToByteArray(file);
+                long count = 0;
+                for (byte b : bytes) {
+                    if (b == '\n') {
+                        count++;
+                    }
+                }
+                return count;
+            } catch (IOException e) {
+                logger.warn("unable to read journal " + file, e);
+                return 0;
+            }
+        }
+
+        private File segmentFile(long segment) {
+            return new File(dir, String.format("%012d", segment) + SUFFIX);
+        }
+    }
+}
@@ -2,17 +2,16 @@ package com.flightstats.hub.dao.aws;
 
 
 import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.dao.ChannelService;
+import com.flightstats.hub.dao.ContentCodec;
 import com.flightstats.hub.dao.ContentDao;
 import com.flightstats.hub.exception.FailedReadException;
 import com.flightstats.hub.metrics.ActiveTraces;
 import com.flightstats.hub.metrics.MetricsService;
+import com.flightstats.hub.model.ChannelConfig;
 import com.flightstats.hub.model.ChannelContentKey;
 import com.flightstats.hub.model.Content;
-import com.flightstats.hub.util.Sleeper;
-import com.github.rholder.retry.Retryer;
-import com.github.rholder.retry.RetryerBuilder;
-import com.github.rholder.retry.StopStrategies;
-import com.github.rholder.retry.WaitStrategies;
+import com.flightstats.hub.util.RuntimeInterruptedException;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -20,11 +19,8 @@ import com.google.inject.name.Named;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.io.File;
+import java.util.concurrent.*;
 
 @SuppressWarnings("WeakerAccess")
 @Singleton
@@ -34,10 +30,14 @@ public class S3WriteQueue {
 
     private static final int THREADS = HubProperties.getS3WriteQueueThreads();
     private static final int QUEUE_SIZE = HubProperties.getS3WriteQueueSize();
-    private Retryer<Void> retryer = buildRetryer();
-    private BlockingQueue<ChannelContentKey> keys = new LinkedBlockingQueue<>(QUEUE_SIZE);
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private final S3WriteJournal keys = new S3WriteJournal(new File(HubProperties.getS3WriteQueuePath()), QUEUE_SIZE);
+    private final BlockingQueue<Attempt> retries = new LinkedBlockingQueue<>();
     private ExecutorService executorService = Executors.newFixedThreadPool(THREADS,
             new ThreadFactoryBuilder().setNameFormat("S3WriteQueue-%d").build());
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("S3WriteQueue-retry").setDaemon(true).build());
     @Inject
     @Named(ContentDao.WRITE_CACHE)
     private ContentDao spokeWriteContentDao;
@@ -46,6 +46,8 @@ public class S3WriteQueue {
     private ContentDao s3SingleContentDao;
     @Inject
     private MetricsService metricsService;
+    @Inject
+    private ChannelService channelService;
 
     @Inject
     private S3WriteQueue() throws InterruptedException {
@@ -64,20 +66,44 @@ public class S3WriteQueue {
         }
     }
 
+    /**
+     * Failed writes are retried on a timer, so backing off from a failing channel does not hold up a worker.
+     */
     private void write() throws InterruptedException {
-        try {
-            ChannelContentKey key = keys.poll(5, TimeUnit.SECONDS);
-            if (key != null) {
-                metricsService.gauge("s3.writeQueue.used", keys.size());
-                metricsService.count("s3.writeQueue.age.removed", key.getAgeMS(), "key:" + key.toString());
+        Attempt attempt = retries.poll();
+        if (attempt == null) {
+            S3WriteJournal.Entry entry = keys.take(1, TimeUnit.SECONDS);
+            if (entry == null) {
+                return;
             }
-            retryer.call(() -> {
-                writeContent(key);
-                return null;
-            });
+            attempt = new Attempt(entry);
+            ChannelContentKey key = entry.getKey();
+            metricsService.gauge("s3.writeQueue.used", keys.size());
+            metricsService.count("s3.writeQueue.age.removed", key.getAgeMS(), "key:" + key.toString());
+        }
+        ChannelContentKey key = attempt.entry.getKey();
+        try {
+            writeContent(key);
         } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                //left in the journal for the next start
+                throw new InterruptedException("interrupted writing " + key);
+            }
+            attempt.attempts++;
+            if (attempt.attempts < MAX_ATTEMPTS) {
+                logger.warn("unable to write to S3 " + key + " " + e.getMessage());
+                metricsService.increment("s3.writeQueue.retried");
+                Attempt retry = attempt;
+                retryScheduler.schedule(() -> retries.add(retry), getRetryMillis(attempt.attempts), TimeUnit.MILLISECONDS);
+                return;
+            }
             logger.warn("unable to call s3", e);
         }
+        keys.complete(attempt.entry);
+    }
+
+    private static long getRetryMillis(int attempts) {
+        return Math.min(MAX_RETRY_MILLIS, 1000L << attempts);
     }
 
     private void writeContent(ChannelContentKey key) throws Exception {
@@ -86,6 +112,10 @@ public class S3WriteQueue {
             try {
                 logger.trace("writing {}", key.getContentKey());
                 Content content = spokeWriteContentDao.get(key.getChannel(), key.getContentKey());
+                ChannelConfig channel = channelService.getCachedChannelConfig(key.getChannel());
+                if (channel != null) {
+                    content.setCodec(ContentCodec.fromName(channel.getCodec()));
+                }
                 content.packageStream();
                 if (content.getData() == null) {
                     throw new FailedReadException("unable to read " + key.toString());
@@ -98,40 +128,36 @@ public class S3WriteQueue {
     }
 
     public void add(ChannelContentKey key) {
-        boolean value = keys.offer(key);
+        boolean value = keys.add(key);
         if (value) {
             metricsService.gauge("s3.writeQueue.used", keys.size());
             metricsService.count("s3.writeQueue.age.added", key.getAgeMS(), "key:" + key.toString());
         } else {
-            logger.warn("Add to queue failed - out of queue space. key= {}", key);
+            logger.warn("Add to queue failed - out of journal space. key= {}", key);
             metricsService.increment("s3.writeQueue.dropped");
         }
     }
 
+    /**
+     * Keys which have not been written remain in the journal, and are written after a restart.
+     */
     public void close() {
-        int count = 0;
-        while (keys.size() > 0) {
-            count++;
-            logger.info("waiting for keys {}", keys.size());
-            if (count >= 60) {
-                logger.warn("waited too long for keys {}", keys.size());
-                return;
-            }
-            Sleeper.sleepQuietly(1000);
+        retryScheduler.shutdownNow();
+        executorService.shutdownNow();
+        try {
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            throw new RuntimeInterruptedException(e);
         }
-        executorService.shutdown();
+        keys.close();
     }
 
-    private Retryer<Void> buildRetryer() {
-        return RetryerBuilder.<Void>newBuilder()
-                .retryIfException(throwable -> {
-                    if (throwable != null) {
-                        logger.warn("unable to write to S3 " + throwable.getMessage());
-                    }
-                    return throwable != null;
-                })
-                .withWaitStrategy(WaitStrategies.exponentialWait(1000, 1, TimeUnit.MINUTES))
-                .withStopStrategy(StopStrategies.stopAfterAttempt(3))
-                .build();
+    private static class Attempt {
+        private final S3WriteJournal.Entry entry;
+        private int attempts;
+
+        private Attempt(S3WriteJournal.Entry entry) {
+            this.entry = entry;
+        }
     }
 }
@@ -46,10 +46,11 @@ public class ChannelConfig implements Serializable, NamedType {
     private boolean protect;
     private DateTime mutableTime;
     private boolean allowZeroBytes;
+    private String codec;
 
     private ChannelConfig(String name, String owner, Date creationDate, long ttlDays, long maxItems, boolean keepForever, String description,
                           Set<String> tags, String replicationSource, String storage,
-                          boolean protect, DateTime mutableTime, boolean allowZeroBytes, String displayName) {
+                          boolean protect, DateTime mutableTime, boolean allowZeroBytes, String displayName, String codec) {
         this.name = StringUtils.trim(name);
         this.displayName = StringUtils.defaultIfBlank(StringUtils.trim(displayName), this.name);
         this.owner = StringUtils.trim(owner);
@@ -59,6 +60,7 @@ public class ChannelConfig implements Serializable, NamedType {
         this.replicationSource = replicationSource;
         this.mutableTime = mutableTime;
         this.allowZeroBytes = allowZeroBytes;
+        this.codec = StringUtils.upperCase(StringUtils.trimToEmpty(codec));
         this.keepForever = keepForever;  // keepForever overrides all other retention policies
         if (this.keepForever) {
             this.ttlDays = 0;
@@ -131,6 +133,7 @@ public class ChannelConfig implements Serializable, NamedType {
             builder.mutableTime(HubDateTimeTypeAdapter.deserialize(rootNode.get("mutableTime").asText()));
         }
         if (rootNode.has("allowZeroBytes")) builder.allowZeroBytes(rootNode.get("allowZeroBytes").asBoolean());
+        if (rootNode.has("codec")) builder.codec(getString(rootNode.get("codec")));
         return builder.build();
     }
 
@@ -253,6 +256,13 @@ public class ChannelConfig implements Serializable, NamedType {
         return displayName;
     }
 
+    /**
+     * @return the name of the channel's ContentCodec, or blank for the default
+     */
+    public String getCodec() {
+        return codec == null ? "" : codec;
+    }
+
     public String getLowerCaseName() {
         return getDisplayName().toLowerCase();
     }
@@ -294,6 +304,7 @@ public class ChannelConfig implements Serializable, NamedType {
         if (this$mutableTime == null ? other$mutableTime != null : !this$mutableTime.equals(other$mutableTime))
             return false;
         if (this.isAllowZeroBytes() != other.isAllowZeroBytes()) return false;
+        if (!this.getCodec().equals(other.getCodec())) return false;
         return true;
     }
 
@@ -324,11 +335,12 @@ public class ChannelConfig implements Serializable, NamedType {
         final Object $mutableTime = this.getMutableTime();
         result = result * PRIME + ($mutableTime == null ? 43 : $mutableTime.hashCode());
         result = result * PRIME + (this.isAllowZeroBytes() ? 79 : 97);
+        result = result * PRIME + this.getCodec().hashCode();
         return result;
     }
 
     public String toString() {
-        return "com.flightstats.hub.model.ChannelConfig(name=" + this.getName() + ", owner=" + this.getOwner() + ", creationDate=" + this.getCreationDate() + ", ttlDays=" + this.getTtlDays() + ", maxItems=" + this.getMaxItems() + ", description=" + this.getDescription() + ", tags=" + this.getTags() + ", replicationSource=" + this.getReplicationSource() + ", storage=" + this.getStorage() + ", protect=" + this.isProtect() + ", mutableTime=" + this.getMutableTime() + ", allowZeroBytes=" + this.isAllowZeroBytes() + ")";
+        return "com.flightstats.hub.model.ChannelConfig(name=" + this.getName() + ", owner=" + this.getOwner() + ", creationDate=" + this.getCreationDate() + ", ttlDays=" + this.getTtlDays() + ", maxItems=" + this.getMaxItems() + ", description=" + this.getDescription() + ", tags=" + this.getTags() + ", replicationSource=" + this.getReplicationSource() + ", storage=" + this.getStorage() + ", protect=" + this.isProtect() + ", mutableTime=" + this.getMutableTime() + ", allowZeroBytes=" + this.isAllowZeroBytes() + ", codec=" + this.getCodec() + ")";
     }
 
     public ChannelConfigBuilder toBuilder() {
@@ -351,6 +363,7 @@ public class ChannelConfig implements Serializable, NamedType {
         private long maxItems;
         private DateTime mutableTime;
         private String displayName;
+        private String codec = "";
 
         ChannelConfigBuilder() {
         }
@@ -370,6 +383,7 @@ public class ChannelConfig implements Serializable, NamedType {
             maxItems(config.getMaxItems());
             mutableTime(config.getMutableTime());
             displayName(config.getDisplayName());
+            codec(config.getCodec());
         }
 
         public ChannelConfigBuilder tags(List<String> tagList) {
@@ -449,8 +463,13 @@ public class ChannelConfig implements Serializable, NamedType {
             return this;
         }
 
+        public ChannelConfigBuilder codec(String codec) {
+            this.codec = codec;
+            return this;
+        }
+
         public ChannelConfig build() {
-            return new ChannelConfig(name, owner, creationDate, ttlDays, maxItems, keepForever, description, tags, replicationSource, storage, protect, mutableTime, allowZeroBytes, displayName);
+            return new ChannelConfig(name, owner, creationDate, ttlDays, maxItems, keepForever, description, tags, replicationSource, storage, protect, mutableTime, allowZeroBytes, displayName, codec);
         }
 
     }
@@ -1,8 +1,10 @@
 package com.flightstats.hub.model;
 
 import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.dao.ContentCodec;
 import com.flightstats.hub.dao.ContentMarshaller;
 import com.flightstats.hub.metrics.ActiveTraces;
+import com.flightstats.hub.util.ByteBlocks;
 import com.flightstats.hub.util.HubUtils;
 import com.google.common.base.Optional;
 import com.google.common.io.ByteStreams;
@@ -11,6 +13,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 public class Content implements Serializable {
     private final static Logger logger = LoggerFactory.getLogger(Content.class);
@@ -23,12 +26,14 @@ public class Content implements Serializable {
     private long contentLength;
     private InputStream stream;
     private byte[] data;
+    private transient ByteBlocks packaged;
     private Optional<ContentKey> contentKey = Optional.absent();
     //size is the number of bytes in the raw, uncompressed item
     private Long size;
     private transient boolean isLarge;
     private transient int threads;
     private transient boolean isHistorical;
+    private transient ContentCodec codec;
     private boolean forceWrite;
     private boolean replicated;
 
@@ -36,6 +41,7 @@ public class Content implements Serializable {
         contentKey = builder.contentKey;
         contentType = builder.contentType;
         stream = builder.stream;
+        data = builder.data;
         contentLength = builder.contentLength;
         threads = Math.max(THREADS, builder.threads);
         forceWrite = builder.forceWrite;
@@ -83,6 +89,20 @@ public class Content implements Serializable {
         return this.isHistorical;
     }
 
+    /**
+     * @return the codec to package this item with, which is the channel's codec when set by the caller
+     */
+    public ContentCodec getCodec() {
+        if (codec == null) {
+            return ContentCodec.getDefault();
+        }
+        return codec;
+    }
+
+    public void setCodec(ContentCodec codec) {
+        this.codec = codec;
+    }
+
     public boolean isForceWrite() {
         return forceWrite;
     }
@@ -106,12 +126,27 @@ public class Content implements Serializable {
         if (isLarge || contentLength >= HubProperties.getLargePayload()) {
             isLarge = true;
         } else {
-            data = ContentMarshaller.toBytes(this);
+            packaged = ContentMarshaller.toBlocks(this, getCodec());
+            data = null;
             stream = null;
         }
     }
 
+    /**
+     * @return the data as buffers, which share the packaged blocks rather than copying them into one array
+     */
+    public ByteBuffer[] getDataBuffers() {
+        if (data == null && packaged != null) {
+            return packaged.toBuffers();
+        }
+        return new ByteBuffer[]{ByteBuffer.wrap(getData()).asReadOnlyBuffer()};
+    }
+
     public byte[] getData() {
+        if (data == null && packaged != null) {
+            data = packaged.toByteArray();
+            packaged = null;
+        }
         if (data == null && stream != null) {
             try {
                 data = ByteStreams.toByteArray(stream);
@@ -215,6 +250,7 @@ public class Content implements Serializable {
         private Long size;
         private Optional<ContentKey> contentKey = Optional.absent();
         private InputStream stream;
+        private byte[] data;
         private int threads;
         private boolean forceWrite;
         private boolean large;
@@ -231,6 +267,7 @@ public class Content implements Serializable {
 
         public Builder withStream(InputStream stream) {
             this.stream = stream;
+            this.data = null;
             return this;
         }
 
@@ -245,7 +282,8 @@ public class Content implements Serializable {
         }
 
         public Builder withData(byte[] data) {
-            this.stream = new ByteArrayInputStream(data);
+            this.data = data;
+            this.stream = null;
             return this;
         }
 
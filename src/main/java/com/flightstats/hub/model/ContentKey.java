@@ -10,14 +10,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
-import java.text.DecimalFormat;
 
+/**
+ * A key is the epoch millis of the item and a hash.  The DateTime is only created when it is asked for,
+ * and urls are parsed and formatted without Joda, as keys are created and sorted in large numbers.
+ */
 public class ContentKey implements ContentPath {
     public static final ContentKey NONE = new ContentKey(TimeUtil.BIG_BANG, "none");
     private final static Logger logger = LoggerFactory.getLogger(ContentKey.class);
-    private static final DecimalFormat format = new DecimalFormat("000000");
-    private final DateTime time;
+    private static final int BULK_DIGITS = 6;
+    private static final int BULK_DIGITS_LIMIT = 1_000_000;
+    private static final int URL_TIME_LENGTH = 24;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    private final long millis;
     private final String hash;
+    private DateTime time;
 
     public ContentKey() {
         this(TimeUtil.now());
@@ -28,10 +35,16 @@ public class ContentKey implements ContentPath {
     }
 
     public ContentKey(DateTime time, String hash) {
+        this.millis = time.getMillis();
         this.time = time;
         this.hash = hash;
     }
 
+    public ContentKey(long millis, String hash) {
+        this.millis = millis;
+        this.hash = hash;
+    }
+
     public ContentKey(int year, int month, int day, int hour, int minute, int second, int millis) {
         this(new DateTime(year, month, day, hour, minute, second, millis, DateTimeZone.UTC));
     }
@@ -55,42 +68,128 @@ public class ContentKey implements ContentPath {
         }
     }
 
+    /**
+     * Parses yyyy/MM/dd/HH/mm/ss/SSS/hash
+     */
     public static Optional<ContentKey> fromUrl(String key) {
-        try {
-            int year = Integer.parseInt(key.substring(0, 4));
-            int month = Integer.parseInt(key.substring(5, 7));
-            int day = Integer.parseInt(key.substring(8, 10));
-            int hour = Integer.parseInt(key.substring(11, 13));
-            int minute = Integer.parseInt(key.substring(14, 16));
-            int second = Integer.parseInt(key.substring(17, 19));
-            int millis = Integer.parseInt(key.substring(20, 23));
-            String hash = key.substring(24);
-            DateTime dateTime = new DateTime(year, month, day, hour, minute, second, millis, DateTimeZone.UTC);
-            return Optional.of(new ContentKey(dateTime, hash));
-        } catch (Exception e) {
-            logger.trace("unable to parse {} {} ", key, e.getMessage());
+        if (key == null || key.length() < URL_TIME_LENGTH) {
+            logger.trace("unable to parse {}", key);
             return Optional.absent();
         }
+        int year = digits(key, 0, 4);
+        int month = digits(key, 5, 2);
+        int day = digits(key, 8, 2);
+        int hour = digits(key, 11, 2);
+        int minute = digits(key, 14, 2);
+        int second = digits(key, 17, 2);
+        int millis = digits(key, 20, 3);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            logger.trace("unable to parse {}", key);
+            return Optional.absent();
+        }
+        long epochMillis = ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60_000L + second * 1000L + millis;
+        return Optional.of(new ContentKey(epochMillis, key.substring(URL_TIME_LENGTH)));
     }
 
-    private synchronized static String bulkHash(int number) {
-        return format.format(number);
+    /**
+     * @return the value of the digits, or -1 if any are not digits
+     */
+    private static int digits(String value, int start, int length) {
+        int result = 0;
+        for (int i = start; i < start + length; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Days since 1970-01-01 in the proleptic Gregorian calendar, from http://howardhinnant.github.io/date_algorithms.html
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * The index is zero padded to six digits, so the keys of a bulk insert sort in the order of its items.
+     * Each digit beyond six is preceded by a '~', which sorts after the digits, to keep that order for larger bulks.
+     */
+    private static String bulkHash(int number) {
+        int digits = number < BULK_DIGITS_LIMIT ? BULK_DIGITS : Integer.toString(number).length();
+        int extra = digits - BULK_DIGITS;
+        char[] chars = new char[extra + digits];
+        for (int i = 0; i < extra; i++) {
+            chars[i] = '~';
+        }
+        for (int i = chars.length - 1; i >= extra; i--) {
+            chars[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        return new String(chars);
     }
 
     public static ContentKey bulkKey(ContentKey master, int index) {
-        return new ContentKey(master.getTime(), master.getHash() + ContentKey.bulkHash(index));
+        return new ContentKey(master.millis, master.getHash() + ContentKey.bulkHash(index));
     }
 
     public String toUrl() {
-        return TimeUtil.millis(time) + hash;
+        long days = Math.floorDiv(millis, DAY_MILLIS);
+        int millisOfDay = (int) Math.floorMod(millis, DAY_MILLIS);
+        long dayOfEra = days + 719468;
+        long era = (dayOfEra >= 0 ? dayOfEra : dayOfEra - 146096) / 146097;
+        dayOfEra -= era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        char[] chars = new char[URL_TIME_LENGTH + hash.length()];
+        writeDigits(chars, 0, year, 4);
+        writeDigits(chars, 5, month, 2);
+        writeDigits(chars, 8, day, 2);
+        writeDigits(chars, 11, millisOfDay / 3_600_000, 2);
+        writeDigits(chars, 14, millisOfDay / 60_000 % 60, 2);
+        writeDigits(chars, 17, millisOfDay / 1000 % 60, 2);
+        writeDigits(chars, 20, millisOfDay % 1000, 3);
+        for (int i = 4; i < 20; i += 3) {
+            chars[i] = '/';
+        }
+        chars[23] = '/';
+        hash.getChars(0, hash.length(), chars, URL_TIME_LENGTH);
+        return new String(chars);
+    }
+
+    private static void writeDigits(char[] chars, int start, int value, int length) {
+        for (int i = start + length - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
     }
 
     public long getMillis() {
-        return time.getMillis();
+        return millis;
     }
 
     public String toString(DateTimeFormatter pathFormatter) {
-        return time.toString(pathFormatter) + hash;
+        return getTime().toString(pathFormatter) + hash;
     }
 
     @Override
@@ -105,30 +204,23 @@ public class ContentKey implements ContentPath {
         }
         if (other instanceof ContentKey) {
             ContentKey key = (ContentKey) other;
-            int diff = time.compareTo(key.getTime());
+            int diff = Long.compare(millis, key.millis);
             if (diff == 0) {
                 diff = hash.compareTo(key.hash);
             }
             return diff;
         }
+        long endMillis;
         if (other instanceof SecondPath) {
-            SecondPath secondPath = (SecondPath) other;
-            DateTime endTime = secondPath.getTime().plusSeconds(1);
-            int diff = time.compareTo(endTime);
-            if (diff == 0) {
-                return 1;
-            }
-            return diff;
-
+            endMillis = other.getTime().getMillis() + 1000;
         } else {
-            MinutePath minutePath = (MinutePath) other;
-            DateTime endTime = minutePath.getTime().plusMinutes(1);
-            int diff = time.compareTo(endTime);
-            if (diff == 0) {
-                return 1;
-            }
-            return diff;
+            endMillis = other.getTime().getMillis() + 60_000;
+        }
+        int diff = Long.compare(millis, endMillis);
+        if (diff == 0) {
+            return 1;
         }
+        return diff;
     }
 
     public byte[] toBytes() {
@@ -136,16 +228,19 @@ public class ContentKey implements ContentPath {
     }
 
     public String toZk() {
-        return time.getMillis() + ":" + hash;
+        return millis + ":" + hash;
     }
 
     public ContentKey fromZk(String value) {
         String[] split = value.split(":");
-        return new ContentKey(new DateTime(Long.parseLong(split[0]), DateTimeZone.UTC), split[1]);
+        return new ContentKey(Long.parseLong(split[0]), split[1]);
     }
 
     public DateTime getTime() {
-        return this.time;
+        if (time == null) {
+            time = new DateTime(millis, DateTimeZone.UTC);
+        }
+        return time;
     }
 
     public String getHash() {
@@ -157,9 +252,7 @@ public class ContentKey implements ContentPath {
         if (!(o instanceof ContentKey)) return false;
         final ContentKey other = (ContentKey) o;
         if (!other.canEqual((Object) this)) return false;
-        final Object this$time = this.getTime();
-        final Object other$time = other.getTime();
-        if (this$time == null ? other$time != null : !this$time.equals(other$time)) return false;
+        if (this.millis != other.millis) return false;
         final Object this$hash = this.getHash();
         final Object other$hash = other.getHash();
         if (this$hash == null ? other$hash != null : !this$hash.equals(other$hash)) return false;
@@ -169,8 +262,7 @@ public class ContentKey implements ContentPath {
     public int hashCode() {
         final int PRIME = 59;
         int result = 1;
-        final Object $time = this.getTime();
-        result = result * PRIME + ($time == null ? 43 : $time.hashCode());
+        result = result * PRIME + (int) (millis >>> 32 ^ millis);
         final Object $hash = this.getHash();
         result = result * PRIME + ($hash == null ? 43 : $hash.hashCode());
         return result;
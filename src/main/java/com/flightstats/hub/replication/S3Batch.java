@@ -39,7 +39,11 @@ public class S3Batch {
     }
 
     public String getGroupName() {
-        return S3_BATCH + HubProperties.getAppEnv() + "_" + channel.getDisplayName();
+        return getGroupName(channel.getDisplayName());
+    }
+
+    public static String getGroupName(String channelName) {
+        return S3_BATCH + HubProperties.getAppEnv() + "_" + channelName;
     }
 
     public ChannelConfig getChannel() {
@@ -0,0 +1,37 @@
+package com.flightstats.hub.spoke;
+
+import org.eclipse.jetty.client.util.AbstractTypedContentProvider;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Sends buffers without copying them.  Each iteration reads duplicates of the buffers,
+ * so the payload can be sent to several servers at once, as a BytesContentProvider can.
+ */
+class BuffersContentProvider extends AbstractTypedContentProvider {
+
+    private final ByteBuffer[] buffers;
+    private final long length;
+
+    BuffersContentProvider(ByteBuffer... buffers) {
+        super("application/octet-stream");
+        this.buffers = buffers;
+        long length = 0;
+        for (ByteBuffer buffer : buffers) {
+            length += buffer.remaining();
+        }
+        this.length = length;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public Iterator<ByteBuffer> iterator() {
+        return Arrays.stream(buffers).map(ByteBuffer::duplicate).iterator();
+    }
+}
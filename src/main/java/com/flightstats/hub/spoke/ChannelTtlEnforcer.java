@@ -5,11 +5,11 @@ import com.flightstats.hub.app.HubServices;
 import com.flightstats.hub.dao.ChannelService;
 import com.flightstats.hub.dao.TtlEnforcer;
 import com.flightstats.hub.model.ChannelConfig;
-import com.flightstats.hub.util.Commander;
 import com.flightstats.hub.util.TimeUtil;
 import com.google.common.util.concurrent.AbstractScheduledService;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +23,9 @@ public class ChannelTtlEnforcer {
     private final String spokePath = HubProperties.getSpokePath(SpokeStore.WRITE);
     @Inject
     private ChannelService channelService;
+    @Inject
+    @Named("WRITE")
+    private LocalSpokeStore spokeStore;
 
     @Inject
     public ChannelTtlEnforcer() {
@@ -34,10 +37,9 @@ public class ChannelTtlEnforcer {
     private Consumer<ChannelConfig> handleCleanup() {
         return channel -> {
             if (channel.getTtlDays() > 0) {
-                String channelPath = spokePath + "/" + channel.getDisplayName();
                 DateTime channelTTL = TimeUtil.stable().minusDays((int) channel.getTtlDays());
                 for (int i = 0; i < 3; i++) {
-                    Commander.run(new String[]{"rm", "-rf", channelPath + "/" + TimeUtil.days(channelTTL.minusDays(i))}, 1);
+                    spokeStore.evict(channel.getDisplayName() + "/" + TimeUtil.days(channelTTL.minusDays(i)));
                 }
             }
         };
@@ -49,7 +51,7 @@ public class ChannelTtlEnforcer {
             try {
                 long start = System.currentTimeMillis();
                 logger.info("running channel cleanup");
-                TtlEnforcer.enforce(spokePath, channelService, handleCleanup());
+                TtlEnforcer.enforce(spokePath, channelService, handleCleanup(), spokeStore::evict);
                 logger.info("completed channel cleanup {}", (System.currentTimeMillis() - start));
             } catch (Exception e) {
                 logger.info("issue cleaning up channels in spoke", e);
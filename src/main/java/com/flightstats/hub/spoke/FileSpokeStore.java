@@ -1,12 +1,12 @@
 package com.flightstats.hub.spoke;
 
+import com.flightstats.hub.model.ChannelContentKey;
 import com.flightstats.hub.model.ContentKey;
-import com.flightstats.hub.model.MinutePath;
 import com.flightstats.hub.util.TimeUtil;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
 import com.google.common.io.ByteStreams;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -14,17 +14,23 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.NotFoundException;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.stream.Stream;
 
 /**
  * Direct interactions with the file system
  */
-public class FileSpokeStore {
+public class FileSpokeStore implements LocalSpokeStore {
 
     private final static Logger logger = LoggerFactory.getLogger(FileSpokeStore.class);
     private final String spokePath;
     private final int spokeTtlMinutes;
+    private final SpokeKeyIndex index = new SpokeKeyIndex();
 
     public FileSpokeStore(String spokePath, int spokeTtlMinutes) {
         this.spokePath = StringUtils.appendIfMissing(spokePath, "/");
@@ -37,12 +43,40 @@ public class FileSpokeStore {
         if (file.canExecute()) {
             logger.warn("**** Spoke file permissions may allow incomplete reads ****");
         }
+        reindexAll();
     }
 
+    private void reindexAll() {
+        long start = System.currentTimeMillis();
+        String[] channels = new File(this.spokePath).list();
+        if (channels != null) {
+            for (String channel : channels) {
+                reindex(channel);
+            }
+        }
+        logger.info("indexed {} in {} ms", spokePath, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void reindex(String channel) {
+        index.removeBucket(channel);
+        try (Stream<Path> paths = Files.walk(Paths.get(spokePath + channel))) {
+            paths.map(Path::toFile)
+                    .filter(file -> file.isFile() && file.canExecute())
+                    .forEach(file -> index.add(spokeKeyFromPath(file.getPath()), file.lastModified()));
+        } catch (NoSuchFileException e) {
+            logger.debug("no channel to index {}", channel);
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("unable to index " + channel, e);
+        }
+    }
+
+    @Override
     public boolean insert(String path, byte[] payload) {
         return insert(path, new ByteArrayInputStream(payload));
     }
 
+    @Override
     public boolean insert(String path, InputStream input) {
         File file = spokeFilePathPart(path);
         logger.trace("insert {} {} {}", file, file.getParentFile().mkdirs(), file.canExecute());
@@ -50,6 +84,7 @@ public class FileSpokeStore {
             long copy = ByteStreams.copy(input, output);
             boolean setExecutable = file.setExecutable(true);
             logger.trace("copied {} {} {}", file, copy, setExecutable);
+            index.add(path);
             return true;
         } catch (IOException e) {
             logger.info("unable to write to " + path, e);
@@ -57,12 +92,14 @@ public class FileSpokeStore {
         }
     }
 
+    @Override
     public byte[] read(String path) {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         read(path, baos);
         return baos.toByteArray();
     }
 
+    @Override
     public void read(String path, OutputStream output) {
         File file = spokeFilePathPart(path);
         logger.trace("reading {}", file);
@@ -82,25 +119,78 @@ public class FileSpokeStore {
         }
     }
 
+    @Override
     public String readKeysInBucket(String path) {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         keysInBucket(path, baos);
         return baos.toString();
     }
 
-    void readKeysInBucket(String path, OutputStream output) {
+    @Override
+    public void readKeysInBucket(String path, OutputStream output) {
         keysInBucket(path, output);
     }
 
+    @Override
     public boolean delete(String path) throws Exception {
+        index.removeBucket(path);
         FileUtils.deleteDirectory(new File(spokePath + path));
         return true;
     }
 
+    @Override
     public boolean deleteFile(String path) throws Exception {
+        index.remove(path);
         return FileUtils.deleteQuietly(spokeFilePathPart(path));
     }
 
+    @Override
+    public long evict(String path) {
+        String prefix = StringUtils.strip(path, "/");
+        long removed = index.removeBucket(prefix);
+        File file = new File(spokePath + prefix);
+        FileUtils.deleteQuietly(file);
+        deleteEmptyParents(file.getParentFile(), new File(spokePath + StringUtils.substringBefore(prefix, "/")));
+        return removed;
+    }
+
+    @Override
+    public long evictBefore(String channel, DateTime time) {
+        long removed = 0;
+        for (String minute : index.getMinutesBefore(channel, TimeUtil.minutes(time))) {
+            removed += evict(channel + "/" + minute);
+        }
+        return removed;
+    }
+
+    @Override
+    public long evictUnmodifiedSince(String channel, long time) {
+        long removed = 0;
+        for (String minute : index.getMinutesModifiedBefore(channel, time)) {
+            removed += evict(channel + "/" + minute);
+        }
+        return removed;
+    }
+
+    @Override
+    public long getItemCount() {
+        return index.size();
+    }
+
+    @Override
+    public Optional<ChannelContentKey> getOldest() {
+        return index.getOldest();
+    }
+
+    /**
+     * Removes empty directories from directory up to, but not including, the channel directory.
+     */
+    static void deleteEmptyParents(File directory, File channelDirectory) {
+        while (directory != null && directory.getPath().length() > channelDirectory.getPath().length() && directory.delete()) {
+            directory = directory.getParentFile();
+        }
+    }
+
     // given a url containing a key, return the file format
     // example: "test_0_4274725520517677/2014/11/18/00/57/24/015/NV2cl5"
     @VisibleForTesting
@@ -137,39 +227,13 @@ public class FileSpokeStore {
     }
 
     private void keysInBucket(String key, OutputStream output) {
-        String path = spokeFilePathPart(key).getAbsolutePath();
-        logger.trace("path {}", path);
-        String resolution = SpokePathUtil.smallestTimeResolution(key);
-        File directory = new File(path);
-
-        if (!directory.exists()) {
-            return;
-        }
         try {
-            Collection<File> files;
-            if (resolution.equals("second")) {
-                // filter all files in the minute folder that start with seconds
-                FileFilter fileFilter = new WildcardFileFilter(SpokePathUtil.second(key) + "*");
-                files = Arrays.asList(directory.listFiles(fileFilter));
-            } else {
-                files = FileUtils.listFiles(new File(path), null, true);
-            }
-            for (File aFile : files) {
-                String filePath = aFile.getPath();
-                logger.trace("filePath {}", filePath);
-                String keyFromPath = spokeKeyFromPath(aFile.getAbsolutePath());
-                writeKey(output, keyFromPath);
-            }
+            index.keysInBucket(key, output);
         } catch (Exception e) {
-            logger.info("error with " + path, e);
+            logger.info("error with " + key, e);
         }
     }
 
-    private void writeKey(OutputStream output, String keyFromPath) throws IOException {
-        output.write(keyFromPath.getBytes());
-        output.write(",".getBytes());
-    }
-
     @VisibleForTesting
     Collection<String> keysInBucket(String key) {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -178,78 +242,21 @@ public class FileSpokeStore {
         return Arrays.asList(split);
     }
 
+    @Override
     public String getLatest(String channel, String limitPath) {
         logger.trace("latest {} {}", channel, limitPath);
-        ContentKey limitKey = ContentKey.fromUrl(limitPath).get();
-        return getLatest(channel, limitPath, limitKey.getTime());
-    }
-
-    private String getLatest(String channel, String limitPath, DateTime hourToSearch) {
-        logger.trace("latest {} {} {}", channel, limitPath, hourToSearch);
-        String hoursPath = TimeUtil.hours(hourToSearch);
-        String fullHoursPath = spokePath + channel + "/" + hoursPath;
-        String[] minutes = new File(fullHoursPath).list();
-        if (minutes == null) {
-            minutes = new String[0];
-        }
-        Arrays.sort(minutes);
-        logger.trace("looking at {} {}", fullHoursPath, minutes);
-        for (int i = minutes.length - 1; i >= 0; i--) {
-            String minute = minutes[i];
-            String[] fileNames = new File(fullHoursPath + "/" + minute).list();
-            Arrays.sort(fileNames);
-            for (int j = fileNames.length - 1; j >= 0; j--) {
-                String spokeKeyFromPath = spokeKeyFromPath(hoursPath + "/" + minute + "/" + fileNames[j]);
-                logger.trace("looking at file {} ", spokeKeyFromPath);
-                if (spokeKeyFromPath.compareTo(limitPath) < 0) {
-                    return channel + "/" + spokeKeyFromPath;
-                }
-            }
-        }
         DateTime ttlTime = TimeUtil.now().minusMinutes(spokeTtlMinutes);
-        DateTime previous = hourToSearch.minusHours(1).withMinuteOfHour(59).withSecondOfMinute(59).withMillisOfSecond(999);
-        if (previous.isBefore(ttlTime)) {
+        String latest = index.getLatest(channel, limitPath, ttlTime);
+        if (latest == null) {
             logger.debug("no latest found for {} {} ", channel, limitPath);
-            return null;
         }
-        return getLatest(channel, limitPath, previous);
+        return latest;
     }
 
-    /**
-     * This may return more than the request count, as this does not do any sorting.
-     */
+    @Override
     public void getNext(String channel, String startKey, int count, OutputStream output) throws IOException {
-        DateTime now = TimeUtil.now();
-        String channelPath = spokePath + channel + "/";
-        logger.trace("next {} {} {}", channel, startKey, now);
-        ContentKey start = ContentKey.fromUrl(startKey).get();
-        int found = 0;
-        MinutePath minutePath = new MinutePath(start.getTime());
-        boolean firstMinute = true;
-        do {
-            //todo gfm - while this fast for short time ranges, it is quite slow over years
-            String minuteUrl = minutePath.toUrl();
-            String minute = channelPath + minuteUrl;
-            logger.trace("minute {}", minute);
-            String[] items = new File(minute).list();
-            if (items != null) {
-                for (String item : items) {
-                    String keyFromPath = spokeKeyFromPath(minuteUrl + "/" + item);
-                    if (firstMinute) {
-                        ContentKey key = ContentKey.fromUrl(keyFromPath).get();
-                        if (key.compareTo(start) > 0) {
-                            found++;
-                            writeKey(output, channel + "/" + keyFromPath);
-                        }
-                    } else {
-                        found++;
-                        writeKey(output, channel + "/" + keyFromPath);
-                    }
-                }
-            }
-            minutePath = new MinutePath(minutePath.getTime().plusMinutes(1));
-            firstMinute = false;
-        } while (found < count && minutePath.getTime().isBefore(now));
+        logger.trace("next {} {} {}", channel, startKey, count);
+        index.getNext(channel, startKey, count, output);
     }
 
     void enforceTtl(String channel, DateTime dateTime) {
@@ -280,6 +287,7 @@ public class FileSpokeStore {
                     recurseDelete(path + "/" + item, limitPath, count + 1, channel);
                 } else {
                     logger.info("deleting {}", spokePath + "/" + current);
+                    index.removeBucket(current);
                     FileUtils.deleteQuietly(new File(spokePath + "/" + current));
                 }
             }
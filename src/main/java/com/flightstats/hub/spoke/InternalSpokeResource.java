@@ -1,8 +1,10 @@
 package com.flightstats.hub.spoke;
 
+import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.app.HubProvider;
 import com.flightstats.hub.model.SingleTrace;
 import com.google.common.io.ByteStreams;
+import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,9 +22,10 @@ import java.util.Arrays;
 public class InternalSpokeResource {
 
     private final static Logger logger = LoggerFactory.getLogger(InternalSpokeResource.class);
-    private static final FileSpokeStore writeSpokeStore = HubProvider.getInstance(FileSpokeStore.class, SpokeStore.WRITE.name());
-    private static final FileSpokeStore readSpokeStore = HubProvider.getInstance(FileSpokeStore.class, SpokeStore.READ.name());
+    private static final LocalSpokeStore writeSpokeStore = HubProvider.getInstance(LocalSpokeStore.class, SpokeStore.WRITE.name());
+    private static final LocalSpokeStore readSpokeStore = HubProvider.getInstance(LocalSpokeStore.class, SpokeStore.READ.name());
     private static final RemoteSpokeStore remoteSpokeStore = HubProvider.getInstance(RemoteSpokeStore.class);
+    private static final long BATCH_BYTES = HubProperties.getProperty("spoke.read.batchMB", 16) * 1024L * 1024;
 
     @Context
     private UriInfo uriInfo;
@@ -32,7 +35,7 @@ public class InternalSpokeResource {
     public Response getPayload(@PathParam("storeName") String storeName,
                                @PathParam("path") String path) {
         try {
-            FileSpokeStore store = getSpokeStoreByName(storeName);
+            LocalSpokeStore store = getSpokeStoreByName(storeName);
             Response.ResponseBuilder builder = Response.ok((StreamingOutput) os -> {
                 try (OutputStream output = new BufferedOutputStream(os)) {
                     store.read(path, output);
@@ -47,6 +50,46 @@ public class InternalSpokeResource {
         }
     }
 
+    /**
+     * Streams the items found for the comma separated keys as a SpokeBulk, in the order requested.
+     * Missing items are left out, and the response stops once it exceeds the batch size,
+     * so keys after the last item returned should be requested again.
+     */
+    @POST
+    @Path("/{storeName}/payloads/{channel}")
+    public Response getPayloads(@PathParam("storeName") String storeName,
+                                @PathParam("channel") String channel,
+                                String keys) {
+        try {
+            LocalSpokeStore store = getSpokeStoreByName(storeName);
+            Response.ResponseBuilder builder = Response.ok((StreamingOutput) os -> {
+                try (OutputStream output = new BufferedOutputStream(os)) {
+                    SpokeBulk.writeStart(output);
+                    long written = 0;
+                    for (String key : StringUtils.split(keys, ",")) {
+                        if (written >= BATCH_BYTES) {
+                            break;
+                        }
+                        try {
+                            byte[] data = store.read(channel + "/" + key);
+                            if (data.length > 0) {
+                                SpokeBulk.writeItem(output, key, data);
+                                written += data.length;
+                            }
+                        } catch (NotFoundException e) {
+                            logger.trace("not found {}", e.getMessage());
+                        }
+                    }
+                    SpokeBulk.writeEnd(output);
+                }
+            });
+            return builder.build();
+        } catch (Exception e) {
+            logger.warn("unable to get payloads " + channel, e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @PUT
     @Path("/{storeName}/payload/{path:.+}")
     public Response putPayload(@PathParam("storeName") String storeName,
@@ -54,7 +97,7 @@ public class InternalSpokeResource {
                                InputStream input) {
         try {
             long start = System.currentTimeMillis();
-            FileSpokeStore store = getSpokeStoreByName(storeName);
+            LocalSpokeStore store = getSpokeStoreByName(storeName);
             if (store.insert(path, input)) {
                 long end = System.currentTimeMillis();
                 if ((end - start) > 4000) {
@@ -82,20 +125,20 @@ public class InternalSpokeResource {
                             InputStream input) {
         try {
             long start = System.currentTimeMillis();
-            FileSpokeStore store = getSpokeStoreByName(storeName);
-            ObjectInputStream stream = new ObjectInputStream(input);
-            int items = stream.readInt();
-            for (int i = 0; i < items; i++) {
-                String keyPath = new String(readByesFully(stream));
-                byte[] data = readByesFully(stream);
-                String itemPath = channel + "/" + keyPath;
-                if (!store.insert(itemPath, new ByteArrayInputStream(data))) {
-                    logger.warn("what happened?!?! {}", channel);
-                    return Response
-                            .status(Response.Status.INTERNAL_SERVER_ERROR)
-                            .entity(new SingleTrace("failed", start).toString())
-                            .build();
-                }
+            LocalSpokeStore store = getSpokeStoreByName(storeName);
+            BufferedInputStream buffered = new BufferedInputStream(input);
+            boolean inserted;
+            if (SpokeBulk.isBulk(buffered)) {
+                inserted = SpokeBulk.read(buffered, (keyPath, data) -> store.insert(channel + "/" + keyPath, data));
+            } else {
+                inserted = insertObjectStream(store, channel, buffered);
+            }
+            if (!inserted) {
+                logger.warn("what happened?!?! {}", channel);
+                return Response
+                        .status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new SingleTrace("failed", start).toString())
+                        .build();
             }
             long end = System.currentTimeMillis();
             if ((end - start) > 4000) {
@@ -111,6 +154,22 @@ public class InternalSpokeResource {
         }
     }
 
+    /**
+     * Reads the ObjectOutputStream bulk written by servers which predate SpokeBulk.
+     */
+    private boolean insertObjectStream(LocalSpokeStore store, String channel, InputStream input) throws IOException {
+        ObjectInputStream stream = new ObjectInputStream(input);
+        int items = stream.readInt();
+        for (int i = 0; i < items; i++) {
+            String keyPath = new String(readByesFully(stream));
+            byte[] data = readByesFully(stream);
+            if (!store.insert(channel + "/" + keyPath, new ByteArrayInputStream(data))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private byte[] readByesFully(ObjectInputStream stream) throws IOException {
         int size = stream.readInt();
         byte[] data = new byte[size];
@@ -118,7 +177,7 @@ public class InternalSpokeResource {
         return data;
     }
 
-    private Response getResponse(FileSpokeStore store, String path) {
+    private Response getResponse(LocalSpokeStore store, String path) {
         logger.trace("time {}", path);
         try {
             Response.ResponseBuilder builder = Response.ok((StreamingOutput) os -> {
@@ -133,7 +192,7 @@ public class InternalSpokeResource {
         }
     }
 
-    private FileSpokeStore getSpokeStoreByName(String name) {
+    private LocalSpokeStore getSpokeStoreByName(String name) {
         switch (SpokeStore.from(name)) {
             case WRITE:
                 return writeSpokeStore;
@@ -151,7 +210,7 @@ public class InternalSpokeResource {
                                   @PathParam("Y") String Y,
                                   @PathParam("M") String M,
                                   @PathParam("day") String day) {
-        FileSpokeStore store = getSpokeStoreByName(storeName);
+        LocalSpokeStore store = getSpokeStoreByName(storeName);
         return getResponse(store, C + "/" + Y + "/" + M + "/" + day);
     }
 
@@ -163,7 +222,7 @@ public class InternalSpokeResource {
                                   @PathParam("M") String M,
                                   @PathParam("D") String D,
                                   @PathParam("hour") String hour) {
-        FileSpokeStore store = getSpokeStoreByName(storeName);
+        LocalSpokeStore store = getSpokeStoreByName(storeName);
         return getResponse(store, C + "/" + Y + "/" + M + "/" + D + "/" + hour);
     }
 
@@ -176,7 +235,7 @@ public class InternalSpokeResource {
                                   @PathParam("D") String D,
                                   @PathParam("h") String h,
                                   @PathParam("minute") String minute) {
-        FileSpokeStore store = getSpokeStoreByName(storeName);
+        LocalSpokeStore store = getSpokeStoreByName(storeName);
         return getResponse(store, C + "/" + Y + "/" + M + "/" + D + "/" + h + "/" + minute);
     }
 
@@ -190,7 +249,7 @@ public class InternalSpokeResource {
                                   @PathParam("h") String h,
                                   @PathParam("m") String m,
                                   @PathParam("second") String second) {
-        FileSpokeStore store = getSpokeStoreByName(storeName);
+        LocalSpokeStore store = getSpokeStoreByName(storeName);
         return getResponse(store, C + "/" + Y + "/" + M + "/" + D + "/" + h + "/" + m + "/" + second);
     }
 
@@ -199,7 +258,7 @@ public class InternalSpokeResource {
     public Response delete(@PathParam("storeName") String storeName,
                            @PathParam("path") String path) {
         try {
-            FileSpokeStore store = getSpokeStoreByName(storeName);
+            LocalSpokeStore store = getSpokeStoreByName(storeName);
             store.delete(path);
             return Response.ok().build();
         } catch (Exception e) {
@@ -0,0 +1,78 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.model.ChannelContentKey;
+import com.google.common.base.Optional;
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The on disk storage used by a Spoke server.
+ * Paths are in the form "channel/yyyy/MM/dd/HH/mm/ss/SSS/hash" for items, or a prefix of that for time buckets.
+ */
+public interface LocalSpokeStore {
+
+    boolean insert(String path, byte[] payload);
+
+    boolean insert(String path, InputStream input);
+
+    byte[] read(String path);
+
+    void read(String path, OutputStream output);
+
+    String readKeysInBucket(String path);
+
+    void readKeysInBucket(String path, OutputStream output);
+
+    boolean delete(String path) throws Exception;
+
+    boolean deleteFile(String path) throws Exception;
+
+    /**
+     * Removes everything stored for a channel, or for a time bucket within a channel.
+     *
+     * @param path channel, or channel/yyyy[/MM[/dd[/HH[/mm]]]]
+     * @return the number of items removed
+     */
+    long evict(String path);
+
+    /**
+     * Removes the minutes of a channel which are before the time.
+     *
+     * @return the number of items removed
+     */
+    long evictBefore(String channel, DateTime time);
+
+    /**
+     * Removes the minutes of a channel which have not been written to since the time, regardless of their key time.
+     *
+     * @param time millis
+     * @return the number of items removed
+     */
+    long evictUnmodifiedSince(String channel, long time);
+
+    /**
+     * @return the number of items held
+     */
+    long getItemCount();
+
+    /**
+     * @return the item with the oldest key time, across all channels
+     */
+    Optional<ChannelContentKey> getOldest();
+
+    /**
+     * Rebuilds the in-memory key index of a channel from disk.
+     */
+    void reindex(String channel);
+
+    String getLatest(String channel, String limitPath);
+
+    /**
+     * Writes keys after the startKey in ascending order, a minute at a time, until at least count keys are written.
+     */
+    void getNext(String channel, String startKey, int count, OutputStream output) throws IOException;
+
+}
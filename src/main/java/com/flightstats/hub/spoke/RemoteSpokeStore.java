@@ -13,29 +13,34 @@ import com.flightstats.hub.metrics.MetricsService;
 import com.flightstats.hub.metrics.Traces;
 import com.flightstats.hub.model.Content;
 import com.flightstats.hub.model.ContentKey;
-import com.flightstats.hub.rest.RestClient;
-import com.flightstats.hub.util.HubUtils;
 import com.flightstats.hub.util.RuntimeInterruptedException;
+import com.flightstats.hub.util.TimeUtil;
 import com.google.common.base.Optional;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.io.ByteStreams;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
-import com.sun.jersey.api.client.Client;
-import com.sun.jersey.api.client.ClientHandlerException;
-import com.sun.jersey.api.client.ClientResponse;
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.DurationFieldType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.ConnectException;
 import java.net.UnknownHostException;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -44,19 +49,26 @@ public class RemoteSpokeStore {
 
     private final static Logger logger = LoggerFactory.getLogger(RemoteSpokeStore.class);
 
-    private final static Client write_client = RestClient.createClient(1, 5, true, false);
-    private final static Client query_client = RestClient.createClient(5, 15, true, true);
+    private static final int WRITE_TIMEOUT_SECONDS = 5;
+    private static final int QUERY_TIMEOUT_SECONDS = 15;
 
     private final CuratorCluster cluster;
     private final MetricsService metricsService;
-    private final ExecutorService executorService;
+    private final SpokeClient spokeClient;
     private final int stableSeconds = HubProperties.getProperty("app.stable_seconds", 5);
+    private final boolean placement = HubProperties.getProperty("spoke.placement", false);
+    private final boolean hedgeReads = HubProperties.getProperty("spoke.read.hedge", true);
+    private final SpokeReadLatency readLatency = new SpokeReadLatency(1000,
+            HubProperties.getProperty("spoke.read.hedgePercentile", 95.0),
+            HubProperties.getProperty("spoke.read.hedgeMinMillis", 10),
+            HubProperties.getProperty("spoke.read.hedgeMaxMillis", 1000));
 
     @Inject
-    public RemoteSpokeStore(@Named("SpokeCuratorCluster") CuratorCluster cluster, MetricsService metricsService) {
+    public RemoteSpokeStore(@Named("SpokeCuratorCluster") CuratorCluster cluster, MetricsService metricsService,
+                            SpokeClient spokeClient) {
         this.cluster = cluster;
         this.metricsService = metricsService;
-        executorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("RemoteSpokeStore-%d").build());
+        this.spokeClient = spokeClient;
     }
 
     void testOne(Collection<String> server) throws InterruptedException {
@@ -102,7 +114,7 @@ public class RemoteSpokeStore {
             try {
                 logger.info("calling server {} path {}", server, path);
                 String url = HubHost.getScheme() + server + "/internal/spoke/test/" + path;
-                ClientResponse response = query_client.resource(url).get(ClientResponse.class);
+                ContentResponse response = spokeClient.get(url, QUERY_TIMEOUT_SECONDS).get();
                 if (response.getStatus() == 200) {
                     logger.info("success calling {}", response);
                 } else if (response.getStatus() == 404) {
@@ -120,43 +132,54 @@ public class RemoteSpokeStore {
         return true;
     }
 
-    public boolean insert(SpokeStore spokeStore, String path, byte[] payload, String spokeApi, String channel) {
-        return insert(spokeStore, path, payload, cluster.getWriteServers(), ActiveTraces.getLocal(), spokeApi, channel);
+    public boolean insert(SpokeStore spokeStore, String path, byte[] payload, String spokeApi, String channel,
+                          SortedSet<ContentKey> keys) {
+        return insert(spokeStore, path, new BytesContentProvider(payload), spokeApi, channel, keys);
+    }
+
+    /**
+     * @param payload is sent to each server, so must be safe to read concurrently, as a BytesContentProvider is
+     * @param keys    the keys being written, which decide the servers when placement is enabled
+     */
+    public boolean insert(SpokeStore spokeStore, String path, ContentProvider payload, String spokeApi, String channel,
+                          SortedSet<ContentKey> keys) {
+        Collection<String> servers;
+        if (placement && spokeStore == SpokeStore.WRITE) {
+            servers = cluster.getWriteServers(channel, keys.first().getTime(), keys.last().getTime());
+        } else {
+            servers = cluster.getWriteServers();
+        }
+        return insert(spokeStore, path, payload, servers, ActiveTraces.getLocal(), spokeApi, channel);
     }
 
     public boolean insert(SpokeStore spokeStore, String path, byte[] payload, Collection<String> servers, Traces traces,
                           String spokeApi, String channel) {
+        return insert(spokeStore, path, new BytesContentProvider(payload), servers, traces, spokeApi, channel);
+    }
+
+    public boolean insert(SpokeStore spokeStore, String path, ContentProvider payload, Collection<String> servers, Traces traces,
+                          String spokeApi, String channel) {
         int quorum = getQuorum(servers.size());
         CountDownLatch quorumLatch = new CountDownLatch(quorum);
         AtomicBoolean firstComplete = new AtomicBoolean();
         for (final String server : servers) {
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    setThread(path);
-                    String uri = HubHost.getScheme() + server + "/internal/spoke/" + spokeStore + "/" + spokeApi + "/" + path;
-                    traces.add(uri);
-                    ClientResponse response = null;
-                    try {
-                        response = write_client.resource(uri).put(ClientResponse.class, payload);
-                        traces.add(server, response.getEntity(String.class));
-                        if (response.getStatus() == 201) {
-                            if (firstComplete.compareAndSet(false, true)) {
-                                metricsService.time(channel, "heisenberg", traces.getStart());
-                            }
-                            quorumLatch.countDown();
-                            logger.trace("server {} path {} response {}", server, path, response);
-                        } else {
-                            logger.info("write failed: server {} path {} response {}", server, path, response);
-                        }
-                    } catch (Exception e) {
-                        traces.add(server, e.getMessage());
-                        logger.warn("write failed: " + server + " " + path, e);
-                    } finally {
-                        HubUtils.close(response);
-                        resetThread();
+            String uri = HubHost.getScheme() + server + "/internal/spoke/" + spokeStore + "/" + spokeApi + "/" + path;
+            traces.add(uri);
+            spokeClient.put(uri, payload, WRITE_TIMEOUT_SECONDS).whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    traces.add(server, throwable.getMessage());
+                    logger.warn("write failed: " + server + " " + path, throwable);
+                    return;
+                }
+                traces.add(server, response.getContentAsString());
+                if (response.getStatus() == 201) {
+                    if (firstComplete.compareAndSet(false, true)) {
+                        metricsService.time(channel, "heisenberg", traces.getStart());
                     }
-
+                    quorumLatch.countDown();
+                    logger.trace("server {} path {} response {}", server, path, response);
+                } else {
+                    logger.info("write failed: server {} path {} response {}", server, path, response);
                 }
             });
         }
@@ -169,98 +192,242 @@ public class RemoteSpokeStore {
         return quorumLatch.getCount() != quorum;
     }
 
-    private void setThread(String name) {
-        Thread thread = Thread.currentThread();
-        thread.setName(thread.getName() + "|" + name);
-    }
-
-    private void resetThread() {
-        Thread thread = Thread.currentThread();
-        thread.setName(StringUtils.substringBefore(thread.getName(), "|"));
-    }
-
     static int getQuorum(int size) {
         return (int) Math.max(1, Math.ceil(size / 2.0));
     }
 
+    /**
+     * Reads from one server at a time, moving to the next server after a miss or a failure.
+     * If a server has not responded within the hedge delay, the read is also sent to the next server,
+     * and the first item found is used.  A miss is sent on to the next server straight away, even while a hedged
+     * read is still pending.
+     */
     public Content get(SpokeStore spokeStore, String path, ContentKey key) {
-        Collection<String> servers = cluster.getRandomServers();
-        for (String server : servers) {
-            ClientResponse response = null;
-            try {
-                setThread(path);
-                String url = HubHost.getScheme() + server + "/internal/spoke/" + spokeStore + "/payload/" + path;
-                response = query_client.resource(url).get(ClientResponse.class);
-                logger.trace("server {} path {} response {}", server, path, response);
-                if (response.getStatus() == 200) {
-                    byte[] entity = response.getEntity(byte[].class);
-                    if (entity.length > 0) {
-                        return ContentMarshaller.toContent(entity, key);
+        Iterator<String> servers;
+        if (placement && spokeStore == SpokeStore.WRITE) {
+            servers = cluster.getReadServers(StringUtils.substringBefore(path, "/"), key.getTime()).iterator();
+        } else {
+            servers = cluster.getRandomServers().iterator();
+        }
+        BlockingQueue<Optional<byte[]>> responses = new LinkedBlockingQueue<>();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(QUERY_TIMEOUT_SECONDS);
+        int pending = 0;
+        boolean hedged = !hedgeReads;
+        try {
+            while (servers.hasNext() || pending > 0) {
+                if (pending == 0) {
+                    sendGet(spokeStore, path, servers.next(), responses);
+                    pending++;
+                }
+                long waitMillis = deadline - System.currentTimeMillis();
+                if (!hedged && servers.hasNext()) {
+                    waitMillis = Math.min(waitMillis, readLatency.getDelayMillis());
+                }
+                Optional<byte[]> response = responses.poll(Math.max(0, waitMillis), TimeUnit.MILLISECONDS);
+                if (response == null) {
+                    if (System.currentTimeMillis() >= deadline) {
+                        logger.warn("timed out getting content " + path);
+                        return null;
                     }
+                    hedged = true;
+                    metricsService.increment("spoke.read.hedged");
+                    sendGet(spokeStore, path, servers.next(), responses);
+                    pending++;
+                    continue;
                 }
-            } catch (JsonMappingException e) {
-                logger.info("JsonMappingException for " + path);
-            } catch (ClientHandlerException e) {
-                if (e.getCause() != null && e.getCause() instanceof ConnectException) {
-                    logger.warn("connection exception " + server);
-                } else {
-                    logger.warn("unable to get content " + server + " " + path, e);
+                pending--;
+                if (response.isPresent()) {
+                    return ContentMarshaller.toContent(response.get(), key);
+                }
+                if (servers.hasNext()) {
+                    sendGet(spokeStore, path, servers.next(), responses);
+                    pending++;
                 }
-            } catch (Exception e) {
-                logger.warn("unable to get content " + path, e);
-            } finally {
-                HubUtils.close(response);
-                resetThread();
             }
+        } catch (JsonMappingException e) {
+            logger.info("JsonMappingException for " + path);
+        } catch (InterruptedException e) {
+            throw new RuntimeInterruptedException(e);
+        } catch (Exception e) {
+            logger.warn("unable to get content " + path, e);
         }
         return null;
     }
 
+    /**
+     * Reads many items of a channel with one request per server, instead of one per item.
+     * Each server returns the items it has, and the keys it did not return are requested from the next server.
+     *
+     * @return the items found, which may not include every key
+     */
+    public Map<ContentKey, Content> get(SpokeStore spokeStore, String channel, Collection<ContentKey> keys) {
+        Map<DateTime, List<ContentKey>> hours = new TreeMap<>();
+        for (ContentKey key : keys) {
+            DateTime hour = key.getTime().hourOfDay().roundFloorCopy();
+            hours.computeIfAbsent(hour, h -> new ArrayList<>()).add(key);
+        }
+        Map<ContentKey, Content> found = new HashMap<>();
+        for (Map.Entry<DateTime, List<ContentKey>> entry : hours.entrySet()) {
+            List<String> servers;
+            if (placement && spokeStore == SpokeStore.WRITE) {
+                servers = cluster.getReadServers(channel, entry.getKey());
+            } else {
+                servers = cluster.getRandomServers();
+            }
+            List<ContentKey> remaining = entry.getValue();
+            Iterator<String> iterator = servers.iterator();
+            while (!remaining.isEmpty() && iterator.hasNext()) {
+                remaining = getPayloads(spokeStore, channel, iterator.next(), remaining, found);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the keys not found on the server
+     */
+    private List<ContentKey> getPayloads(SpokeStore spokeStore, String channel, String server,
+                                         List<ContentKey> keys, Map<ContentKey, Content> found) {
+        String uri = HubHost.getScheme() + server + "/internal/spoke/" + spokeStore + "/payloads/" + channel;
+        List<ContentKey> missing = new ArrayList<>();
+        while (!keys.isEmpty()) {
+            byte[] body = StringUtils.join(keys.stream().map(ContentKey::toUrl).iterator(), ",").getBytes(StandardCharsets.UTF_8);
+            Map<String, byte[]> items = new HashMap<>();
+            try {
+                ContentResponse response = spokeClient.post(uri, body, QUERY_TIMEOUT_SECONDS)
+                        .get(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (response.getStatus() != 200) {
+                    logger.info("unable to get payloads: server {} channel {} response {}", server, channel, response);
+                    missing.addAll(keys);
+                    return missing;
+                }
+                SpokeBulk.read(new ByteArrayInputStream(response.getContent()), (key, data) -> {
+                    items.put(key, ByteStreams.toByteArray(data));
+                    return true;
+                });
+            } catch (InterruptedException e) {
+                throw new RuntimeInterruptedException(e);
+            } catch (Exception e) {
+                logFailure(server, channel, e instanceof ExecutionException ? e.getCause() : e);
+                missing.addAll(keys);
+                return missing;
+            }
+            int last = -1;
+            for (int i = 0; i < keys.size(); i++) {
+                ContentKey key = keys.get(i);
+                byte[] data = items.get(key.toUrl());
+                if (data == null) {
+                    continue;
+                }
+                last = i;
+                try {
+                    found.put(key, ContentMarshaller.toContent(data, key));
+                } catch (IOException e) {
+                    logger.warn("unable to read content " + channel + " " + key, e);
+                }
+            }
+            for (int i = 0; i <= last; i++) {
+                if (!items.containsKey(keys.get(i).toUrl())) {
+                    missing.add(keys.get(i));
+                }
+            }
+            if (last < 0) {
+                missing.addAll(keys);
+                return missing;
+            }
+            keys = keys.subList(last + 1, keys.size());
+        }
+        return missing;
+    }
+
+    private void sendGet(SpokeStore spokeStore, String path, String server, BlockingQueue<Optional<byte[]>> responses) {
+        long start = System.currentTimeMillis();
+        String url = HubHost.getScheme() + server + "/internal/spoke/" + spokeStore + "/payload/" + path;
+        spokeClient.get(url, QUERY_TIMEOUT_SECONDS).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                logFailure(server, path, throwable);
+                responses.add(Optional.absent());
+                return;
+            }
+            logger.trace("server {} path {} response {}", server, path, response);
+            readLatency.record(System.currentTimeMillis() - start);
+            if (response.getStatus() == 200 && response.getContent().length > 0) {
+                responses.add(Optional.of(response.getContent()));
+            } else {
+                responses.add(Optional.absent());
+            }
+        });
+    }
+
+    private void logFailure(String server, String path, Throwable cause) {
+        if (cause instanceof ConnectException) {
+            logger.warn("connection exception " + server);
+        } else {
+            logger.warn("unable to get content " + server + " " + path, cause);
+        }
+    }
+
     QueryResult readTimeBucket(SpokeStore spokeStore, String channel, String timePath) throws InterruptedException {
-        return getKeys("/internal/spoke/" + spokeStore + "/time/" + channel + "/" + timePath);
+        Collection<String> servers = cluster.getAllServers();
+        if (placement && spokeStore == SpokeStore.WRITE) {
+            DateTime start = getBucketStart(timePath);
+            servers = cluster.getQueryServers(channel, start, getBucketEnd(start, timePath));
+        }
+        return getKeys("/internal/spoke/" + spokeStore + "/time/" + channel + "/" + timePath, servers);
     }
 
     SortedSet<ContentKey> getNext(String channel, int count, String startKey) throws InterruptedException {
-        return getKeys("/internal/spoke/next/" + channel + "/" + count + "/" + startKey).getContentKeys();
+        Collection<String> servers = cluster.getAllServers();
+        if (placement) {
+            servers = cluster.getQueryServers(channel, ContentKey.fromUrl(startKey).get().getTime(), TimeUtil.now());
+        }
+        return getKeys("/internal/spoke/next/" + channel + "/" + count + "/" + startKey, servers).getContentKeys();
     }
 
-    private QueryResult getKeys(final String path) throws InterruptedException {
+    /**
+     * @param timePath yyyy[/MM[/dd[/HH[/mm[/ss[/SSS]]]]]]
+     */
+    static DateTime getBucketStart(String timePath) {
+        int[] fields = {0, 1, 1, 0, 0, 0, 0};
+        String[] split = StringUtils.split(timePath, "/");
+        for (int i = 0; i < split.length; i++) {
+            fields[i] = Integer.parseInt(split[i]);
+        }
+        return new DateTime(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5], fields[6], DateTimeZone.UTC);
+    }
+
+    static DateTime getBucketEnd(DateTime start, String timePath) {
+        DurationFieldType[] units = {DurationFieldType.years(), DurationFieldType.months(), DurationFieldType.days(),
+                DurationFieldType.hours(), DurationFieldType.minutes(), DurationFieldType.seconds(), DurationFieldType.millis()};
+        int length = StringUtils.split(timePath, "/").length;
+        return start.withFieldAdded(units[length - 1], 1).minusMillis(1);
+    }
+
+    private QueryResult getKeys(final String path, Collection<String> servers) throws InterruptedException {
         Traces traces = ActiveTraces.getLocal();
-        Collection<String> servers = cluster.getAllServers();
         CountDownLatch countDownLatch = new CountDownLatch(servers.size());
         QueryResult queryResult = new QueryResult(servers.size());
         for (final String server : servers) {
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    ClientResponse response = null;
-                    try {
-                        setThread(path);
-                        traces.add("spoke calling", server, path);
-                        response = query_client.resource(HubHost.getScheme() + server + path).get(ClientResponse.class);
-                        traces.add("spoke server response", server, response);
-                        if (response.getStatus() == 200) {
-                            SortedSet<ContentKey> keySet = new TreeSet<>();
-                            String keysString = response.getEntity(String.class);
-                            ContentKeyUtil.convertKeyStrings(keysString, keySet);
-                            traces.add(server, keySet);
-                            queryResult.addKeys(keySet);
-                        }
-                    } catch (ClientHandlerException e) {
-                        if (e.getCause() != null && e.getCause() instanceof ConnectException) {
-                            logger.warn("connection exception " + server);
-                        } else {
-                            logger.warn("unable to get content " + path, e);
-                        }
-                        traces.add("ClientHandlerException", e.getMessage(), server);
-                    } catch (Exception e) {
-                        logger.warn("unable to handle " + server + " " + path, e);
-                        traces.add("unable to handle ", server, path, e);
-                    } finally {
-                        HubUtils.close(response);
-                        resetThread();
-                        countDownLatch.countDown();
+            traces.add("spoke calling", server, path);
+            spokeClient.get(HubHost.getScheme() + server + path, QUERY_TIMEOUT_SECONDS).whenComplete((response, throwable) -> {
+                try {
+                    if (throwable != null) {
+                        logFailure(server, path, throwable);
+                        traces.add("unable to handle ", server, path, throwable.getMessage());
+                        return;
+                    }
+                    traces.add("spoke server response", server, response);
+                    if (response.getStatus() == 200) {
+                        SortedSet<ContentKey> keySet = new TreeSet<>();
+                        ContentKeyUtil.convertKeyStrings(response.getContentAsString(), keySet);
+                        traces.add(server, keySet);
+                        queryResult.addKeys(keySet);
                     }
+                } catch (Exception e) {
+                    logger.warn("unable to handle " + server + " " + path, e);
+                    traces.add("unable to handle ", server, path, e);
+                } finally {
+                    countDownLatch.countDown();
                 }
             });
         }
@@ -273,38 +440,27 @@ public class RemoteSpokeStore {
         CountDownLatch countDownLatch = new CountDownLatch(servers.size());
         SortedSet<ContentKey> orderedKeys = Collections.synchronizedSortedSet(new TreeSet<>());
         for (final String server : servers) {
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    ClientResponse response = null;
-                    try {
-                        setThread(path);
-                        traces.add("spoke calling", server, channel);
-                        response = query_client.resource(HubHost.getScheme() + server + "/internal/spoke/latest/" + path)
-                                .get(ClientResponse.class);
-                        traces.add("spoke server response", server, response);
-                        if (response.getStatus() == 200) {
-                            String key = response.getEntity(String.class);
-                            if (StringUtils.isNotEmpty(key)) {
-                                orderedKeys.add(ContentKeyUtil.convertKey(key).get());
-                            }
-                            traces.add(server, key);
-                        }
-                    } catch (ClientHandlerException e) {
-                        if (e.getCause() != null && e.getCause() instanceof ConnectException) {
-                            logger.warn("connection exception " + server);
-                        } else {
-                            logger.warn("unable to get content " + path, e);
+            traces.add("spoke calling", server, channel);
+            spokeClient.get(HubHost.getScheme() + server + "/internal/spoke/latest/" + path, QUERY_TIMEOUT_SECONDS).whenComplete((response, throwable) -> {
+                try {
+                    if (throwable != null) {
+                        logFailure(server, path, throwable);
+                        traces.add("unable to handle ", server, channel, throwable.getMessage());
+                        return;
+                    }
+                    traces.add("spoke server response", server, response);
+                    if (response.getStatus() == 200) {
+                        String key = response.getContentAsString();
+                        if (StringUtils.isNotEmpty(key)) {
+                            orderedKeys.add(ContentKeyUtil.convertKey(key).get());
                         }
-                        traces.add("ClientHandlerException", e.getMessage(), server);
-                    } catch (Exception e) {
-                        logger.warn("unable to handle " + server + " " + channel, e);
-                        traces.add("unable to handle ", server, channel, e);
-                    } finally {
-                        HubUtils.close(response);
-                        resetThread();
-                        countDownLatch.countDown();
+                        traces.add(server, key);
                     }
+                } catch (Exception e) {
+                    logger.warn("unable to handle " + server + " " + channel, e);
+                    traces.add("unable to handle ", server, channel, e);
+                } finally {
+                    countDownLatch.countDown();
                 }
             });
         }
@@ -320,26 +476,16 @@ public class RemoteSpokeStore {
         int quorum = servers.size();
         CountDownLatch countDownLatch = new CountDownLatch(quorum);
         for (final String server : servers) {
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    ClientResponse response = null;
-                    try {
-                        setThread(path);
-                        response = query_client.resource(HubHost.getScheme() + server + "/internal/spoke/" + spokeStore + "/payload/" + path)
-                                .delete(ClientResponse.class);
-
-                        if (response.getStatus() < 400) {
-                            countDownLatch.countDown();
-                        }
-                        logger.trace("server {} path {} response {}", server, path, response);
-                    } catch (Exception e) {
-                        logger.warn("unable to delete " + path, e);
-                    } finally {
-                        HubUtils.close(response);
-                        resetThread();
-                    }
+            String uri = HubHost.getScheme() + server + "/internal/spoke/" + spokeStore + "/payload/" + path;
+            spokeClient.delete(uri, QUERY_TIMEOUT_SECONDS).whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    logger.warn("unable to delete " + path, throwable);
+                    return;
+                }
+                if (response.getStatus() < 400) {
+                    countDownLatch.countDown();
                 }
+                logger.trace("server {} path {} response {}", server, path, response);
             });
         }
 
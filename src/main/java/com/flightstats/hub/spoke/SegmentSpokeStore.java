@@ -0,0 +1,344 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.model.ChannelContentKey;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.util.ByteBlocks;
+import com.flightstats.hub.util.TimeUtil;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.NameFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.NotFoundException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores items in per-channel, per-minute segment files, instead of a file per item.
+ * Segments live at channel/yyyy/MM/dd/HH/mm/segment, so time based deletes of directories behave the same as FileSpokeStore.
+ * <p>
+ * Open segments are cached, and each use of a segment pins it, so a segment dropped from the cache stays open until
+ * its last use ends.  There is only ever one open segment per file, as loading a file which is still open reuses it.
+ */
+public class SegmentSpokeStore implements LocalSpokeStore {
+
+    private final static Logger logger = LoggerFactory.getLogger(SegmentSpokeStore.class);
+    static final String SEGMENT = "segment";
+    private static final int INPUT_BLOCK_BYTES = 8 * 1024;
+
+    private final String spokePath;
+    private final int spokeTtlMinutes;
+    private final LoadingCache<String, SpokeSegment> segments;
+    private final Map<String, SpokeSegment> open = new ConcurrentHashMap<>();
+    private final SpokeKeyIndex index = new SpokeKeyIndex();
+
+    public SegmentSpokeStore(String spokePath, int spokeTtlMinutes) {
+        this.spokePath = StringUtils.appendIfMissing(spokePath, "/");
+        this.spokeTtlMinutes = spokeTtlMinutes;
+        this.segments = CacheBuilder.newBuilder()
+                .maximumSize(HubProperties.getProperty("spoke.segment.openSegments", 5000))
+                .expireAfterAccess(HubProperties.getProperty("spoke.segment.openMinutes", 10), TimeUnit.MINUTES)
+                .removalListener((RemovalListener<String, SpokeSegment>) notification -> {
+                    if (notification.getValue().retire()) {
+                        open.remove(notification.getKey(), notification.getValue());
+                    }
+                })
+                .build(new CacheLoader<String, SpokeSegment>() {
+                    @Override
+                    public SpokeSegment load(String minutePath) throws Exception {
+                        return open.compute(minutePath, (key, existing) -> {
+                            if (existing != null && existing.revive()) {
+                                return existing;
+                            }
+                            try {
+                                return new SpokeSegment(segmentFile(minutePath));
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                    }
+                });
+        logger.info("starting with storage path " + this.spokePath);
+        if (!insert("hub-startup/" + new ContentKey().toUrl(), ("" + System.currentTimeMillis()).getBytes())) {
+            throw new RuntimeException("unable to create startup file");
+        }
+        reindexAll();
+    }
+
+    private void reindexAll() {
+        long start = System.currentTimeMillis();
+        String[] channels = new File(this.spokePath).list();
+        if (channels != null) {
+            for (String channel : channels) {
+                reindex(channel);
+            }
+        }
+        logger.info("indexed {} in {} ms", spokePath, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void reindex(String channel) {
+        index.removeBucket(channel);
+        File directory = new File(spokePath + channel);
+        if (!directory.isDirectory()) {
+            return;
+        }
+        for (File file : FileUtils.listFiles(directory, new NameFileFilter(SEGMENT), TrueFileFilter.INSTANCE)) {
+            String minutePath = file.getParentFile().getAbsolutePath();
+            String minute = StringUtils.strip(StringUtils.substringAfter(minutePath, directory.getAbsolutePath()), "/");
+            long modified = file.lastModified();
+            try {
+                withSegment(channel + "/" + minute, segment -> {
+                    for (String name : segment.getNames()) {
+                        index.add(channel, minute, name, modified);
+                    }
+                    return null;
+                });
+            } catch (IOException e) {
+                logger.warn("unable to index " + minutePath, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean insert(String path, byte[] payload) {
+        return insert(path, new ByteBuffer[]{ByteBuffer.wrap(payload)});
+    }
+
+    /**
+     * The input is read before the segment is used, so a slow writer never holds up other writes to the minute.
+     */
+    @Override
+    public boolean insert(String path, InputStream input) {
+        ByteBlocks payload = new ByteBlocks(INPUT_BLOCK_BYTES);
+        try {
+            ByteStreams.copy(input, payload);
+        } catch (IOException e) {
+            logger.info("unable to read input for " + path, e);
+            return false;
+        }
+        return insert(path, payload.toBuffers());
+    }
+
+    private boolean insert(String path, ByteBuffer[] payload) {
+        String[] split = splitItemPath(path);
+        try {
+            withSegment(split[0], segment -> {
+                segment.append(split[1], payload);
+                return null;
+            });
+            index.add(path);
+            return true;
+        } catch (Exception e) {
+            logger.info("unable to write to " + path, e);
+            return false;
+        }
+    }
+
+    @Override
+    public byte[] read(String path) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        read(path, baos);
+        return baos.toByteArray();
+    }
+
+    @Override
+    public void read(String path, OutputStream output) {
+        String[] split = splitItemPath(path);
+        logger.trace("reading {}", path);
+        boolean found;
+        try {
+            found = withSegment(split[0], segment -> segment.read(split[1], output));
+        } catch (IOException e) {
+            logger.info("unable to read from " + path, e);
+            return;
+        }
+        if (!found) {
+            throw new NotFoundException("not found " + path);
+        }
+    }
+
+    @Override
+    public String readKeysInBucket(String path) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        readKeysInBucket(path, baos);
+        return baos.toString();
+    }
+
+    @Override
+    public void readKeysInBucket(String path, OutputStream output) {
+        keysInBucket(path, output);
+    }
+
+    @Override
+    public boolean delete(String path) throws Exception {
+        evict(path);
+        return true;
+    }
+
+    @Override
+    public boolean deleteFile(String path) throws Exception {
+        String[] split = splitItemPath(path);
+        index.remove(path);
+        if (!segmentFile(split[0]).exists()) {
+            return false;
+        }
+        return withSegment(split[0], segment -> segment.remove(split[1]));
+    }
+
+    @Override
+    public long evict(String path) {
+        String prefix = StringUtils.strip(path, "/");
+        long removed = index.removeBucket(prefix);
+        invalidate(prefix);
+        File file = new File(spokePath + prefix);
+        FileUtils.deleteQuietly(file);
+        invalidate(prefix);
+        FileSpokeStore.deleteEmptyParents(file.getParentFile(), new File(spokePath + StringUtils.substringBefore(prefix, "/")));
+        return removed;
+    }
+
+    @Override
+    public long evictBefore(String channel, DateTime time) {
+        long removed = 0;
+        for (String minute : index.getMinutesBefore(channel, TimeUtil.minutes(time))) {
+            removed += evict(channel + "/" + minute);
+        }
+        return removed;
+    }
+
+    @Override
+    public long evictUnmodifiedSince(String channel, long time) {
+        long removed = 0;
+        for (String minute : index.getMinutesModifiedBefore(channel, time)) {
+            removed += evict(channel + "/" + minute);
+        }
+        return removed;
+    }
+
+    @Override
+    public long getItemCount() {
+        return index.size();
+    }
+
+    @Override
+    public Optional<ChannelContentKey> getOldest() {
+        return index.getOldest();
+    }
+
+    private void invalidate(String prefix) {
+        Iterator<String> iterator = segments.asMap().keySet().iterator();
+        while (iterator.hasNext()) {
+            String minutePath = iterator.next();
+            if (minutePath.equals(prefix) || minutePath.startsWith(prefix + "/")) {
+                segments.invalidate(minutePath);
+            }
+        }
+    }
+
+    private interface SegmentCall<T> {
+        T call(SpokeSegment segment) throws IOException;
+    }
+
+    /**
+     * Pins the segment for the call, so it is not closed while in use.
+     */
+    private <T> T withSegment(String minutePath, SegmentCall<T> call) throws IOException {
+        SpokeSegment segment = acquire(minutePath);
+        try {
+            return call.call(segment);
+        } finally {
+            if (segment.release()) {
+                open.remove(minutePath, segment);
+            }
+        }
+    }
+
+    private SpokeSegment acquire(String minutePath) throws IOException {
+        while (true) {
+            SpokeSegment segment;
+            try {
+                segment = segments.get(minutePath);
+            } catch (ExecutionException | UncheckedExecutionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                throw new IOException("unable to open segment " + minutePath, cause);
+            }
+            if (segment.acquire()) {
+                return segment;
+            }
+            segments.asMap().remove(minutePath, segment);
+        }
+    }
+
+    private File segmentFile(String minutePath) {
+        return new File(spokePath + minutePath + "/" + SEGMENT);
+    }
+
+    /**
+     * given a url containing a key, return the minute path and the item name within the segment
+     * example: "test_0_4274725520517677/2014/11/18/00/57/24/015/NV2cl5" returns
+     * "test_0_4274725520517677/2014/11/18/00/57" and "24015NV2cl5"
+     */
+    @VisibleForTesting
+    static String[] splitItemPath(String urlPathPart) {
+        String[] split = StringUtils.split(urlPathPart, "/");
+        if (split.length < 9) {
+            throw new IllegalArgumentException("not an item path " + urlPathPart);
+        }
+        String minutePath = split[0] + "/" + split[1] + "/" + split[2] + "/" + split[3] + "/" + split[4] + "/" + split[5];
+        return new String[]{minutePath, split[6] + split[7] + split[8]};
+    }
+
+    private void keysInBucket(String key, OutputStream output) {
+        try {
+            index.keysInBucket(key, output);
+        } catch (Exception e) {
+            logger.info("error with " + key, e);
+        }
+    }
+
+    @VisibleForTesting
+    Collection<String> keysInBucket(String key) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        keysInBucket(key, baos);
+        String[] split = baos.toString().split(",");
+        return Arrays.asList(split);
+    }
+
+    @Override
+    public String getLatest(String channel, String limitPath) {
+        logger.trace("latest {} {}", channel, limitPath);
+        DateTime ttlTime = TimeUtil.now().minusMinutes(spokeTtlMinutes);
+        String latest = index.getLatest(channel, limitPath, ttlTime);
+        if (latest == null) {
+            logger.debug("no latest found for {} {} ", channel, limitPath);
+        }
+        return latest;
+    }
+
+    @Override
+    public void getNext(String channel, String startKey, int count, OutputStream output) throws IOException {
+        logger.trace("next {} {} {}", channel, startKey, count);
+        index.getNext(channel, startKey, count, output);
+    }
+
+}
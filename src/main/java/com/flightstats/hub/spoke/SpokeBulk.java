@@ -0,0 +1,280 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.util.RuntimeInterruptedException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The framing used to write many items to a Spoke server in one request, and to read many items back in one response.
+ * <p>
+ * A bulk starts with a 4 byte magic number, followed by a frame for each item of
+ * [int keyLength][key][int dataLength][data], where key is the UTF-8 "yyyy/MM/dd/HH/mm/ss/SSS/hash" of the item.
+ * A keyLength of 0 ends the bulk, so a bulk missing its end is rejected. Ints are big-endian.
+ * <p>
+ * Frames are built around each item's data without copying it, and are read back one item at a time,
+ * so neither end needs to hold the whole bulk.
+ * <p>
+ * Writes use the ObjectOutputStream format of earlier servers unless spoke.bulk.frames is true, which should only
+ * be set once every Spoke server reads frames.  Both formats are always read.
+ * <p>
+ * Items are compressed in chunks of spoke.bulk.packageChunk items, shared between the calling thread and up to
+ * spoke.bulk.packageThreads - 1 threads of a pool shared by all bulks.
+ */
+class SpokeBulk {
+
+    static final int MAGIC = 0x53424b31;
+    private static final int MAX_KEY_LENGTH = 1024;
+    private static final boolean WRITE_FRAMES = HubProperties.getProperty("spoke.bulk.frames", false);
+    private static final int PACKAGE_THREADS = HubProperties.getProperty("spoke.bulk.packageThreads",
+            Runtime.getRuntime().availableProcessors());
+    private static final int PACKAGE_CHUNK = HubProperties.getProperty("spoke.bulk.packageChunk", 64);
+    private static final ExecutorService packagePool = Executors.newFixedThreadPool(Math.max(1, PACKAGE_THREADS - 1),
+            new ThreadFactoryBuilder().setNameFormat("SpokeBulkPackage-%d").setDaemon(true).build());
+
+    interface ItemConsumer {
+        /**
+         * @param data the item's data, which ends at the end of the item
+         * @return false to stop reading
+         */
+        boolean accept(String key, InputStream data) throws IOException;
+    }
+
+    /**
+     * @return the bytes of the bulk in the configured format, in the order they should be sent
+     */
+    static byte[][] toBulk(List<Content> items) throws IOException {
+        return WRITE_FRAMES ? toFrames(items) : toObjectStream(items);
+    }
+
+    /**
+     * The format read by servers which predate frames, as a single array.
+     */
+    static byte[][] toObjectStream(List<Content> items) throws IOException {
+        packageItems(items);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream stream = new ObjectOutputStream(baos);
+        stream.writeInt(items.size());
+        for (Content content : items) {
+            byte[] key = content.getContentKey().get().toUrl().getBytes(StandardCharsets.UTF_8);
+            stream.writeInt(key.length);
+            stream.write(key);
+            byte[] data = content.getData();
+            stream.writeInt(data.length);
+            stream.write(data);
+        }
+        stream.flush();
+        return new byte[][]{baos.toByteArray()};
+    }
+
+    /**
+     * @return the frames of the bulk, in the order they should be sent
+     */
+    static byte[][] toFrames(List<Content> items) throws IOException {
+        byte[][] frames = new byte[items.size() * 2 + 2][];
+        frames[0] = ByteBuffer.allocate(4).putInt(MAGIC).array();
+        packageItems(items);
+        int index = 1;
+        for (Content content : items) {
+            byte[] data = content.getData();
+            frames[index++] = header(content.getContentKey().get().toUrl(), data.length);
+            frames[index++] = data;
+        }
+        frames[index] = new byte[4];
+        return frames;
+    }
+
+    /**
+     * Calls packageStream on each item.  The calling thread takes chunks along with the pool,
+     * so a bulk is never left waiting on threads which are busy with other bulks.
+     */
+    static void packageItems(List<Content> items) throws IOException {
+        int chunks = (items.size() + PACKAGE_CHUNK - 1) / PACKAGE_CHUNK;
+        if (chunks <= 1 || PACKAGE_THREADS <= 1) {
+            for (Content content : items) {
+                content.packageStream();
+            }
+            return;
+        }
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(chunks);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            int chunk;
+            while ((chunk = next.getAndIncrement()) < chunks) {
+                try {
+                    if (failure.get() == null) {
+                        int end = Math.min(items.size(), (chunk + 1) * PACKAGE_CHUNK);
+                        for (int i = chunk * PACKAGE_CHUNK; i < end; i++) {
+                            items.get(i).packageStream();
+                        }
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        for (int i = 1; i < Math.min(PACKAGE_THREADS, chunks); i++) {
+            packagePool.execute(worker);
+        }
+        worker.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+            next.set(chunks);
+            throw new RuntimeInterruptedException(e);
+        }
+        Exception exception = failure.get();
+        if (exception instanceof IOException) {
+            throw (IOException) exception;
+        } else if (exception instanceof RuntimeException) {
+            throw (RuntimeException) exception;
+        } else if (exception != null) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    static void writeStart(OutputStream output) throws IOException {
+        output.write(ByteBuffer.allocate(4).putInt(MAGIC).array());
+    }
+
+    static void writeItem(OutputStream output, String key, byte[] data) throws IOException {
+        output.write(header(key, data.length));
+        output.write(data);
+    }
+
+    static void writeEnd(OutputStream output) throws IOException {
+        output.write(new byte[4]);
+    }
+
+    private static byte[] header(String key, int dataLength) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 + keyBytes.length + 4)
+                .putInt(keyBytes.length).put(keyBytes).putInt(dataLength).array();
+    }
+
+    /**
+     * @return true if the input starts with a bulk, leaving the input where it was
+     */
+    static boolean isBulk(BufferedInputStream input) throws IOException {
+        input.mark(4);
+        try {
+            return new DataInputStream(input).readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            input.reset();
+        }
+    }
+
+    /**
+     * @return true if every item was accepted, false if the consumer stopped reading
+     */
+    static boolean read(InputStream input, ItemConsumer consumer) throws IOException {
+        DataInputStream stream = new DataInputStream(input);
+        if (stream.readInt() != MAGIC) {
+            throw new IOException("not a spoke bulk");
+        }
+        while (true) {
+            int keyLength = stream.readInt();
+            if (keyLength == 0) {
+                return true;
+            }
+            if (keyLength < 0 || keyLength > MAX_KEY_LENGTH) {
+                throw new IOException("invalid key length " + keyLength);
+            }
+            byte[] key = new byte[keyLength];
+            stream.readFully(key);
+            int dataLength = stream.readInt();
+            if (dataLength < 0) {
+                throw new IOException("invalid data length " + dataLength);
+            }
+            FrameInputStream data = new FrameInputStream(stream, dataLength);
+            if (!consumer.accept(new String(key, StandardCharsets.UTF_8), data)) {
+                return false;
+            }
+            data.skipRemaining();
+        }
+    }
+
+    /**
+     * The data of a single item, which fails if the underlying stream ends before the item does.
+     */
+    private static class FrameInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        FrameInputStream(InputStream input, long length) {
+            super(input);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = in.read();
+            if (read < 0) {
+                throw new EOFException("bulk ended within an item");
+            }
+            remaining--;
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = in.read(bytes, offset, (int) Math.min(length, remaining));
+            if (read < 0) {
+                throw new EOFException("bulk ended within an item");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            //the underlying stream holds the rest of the bulk
+        }
+
+        void skipRemaining() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) >= 0) {
+                //discard
+            }
+        }
+    }
+}
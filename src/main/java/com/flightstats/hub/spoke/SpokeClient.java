@@ -0,0 +1,108 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.app.HubServices;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.inject.Singleton;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpContentResponse;
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking http client for calls between Spoke servers.
+ * Connections are pooled and kept alive per server, and the number of concurrent requests to each server is bounded,
+ * with additional requests queued until a connection is available.
+ */
+@Singleton
+public class SpokeClient {
+
+    private final static Logger logger = LoggerFactory.getLogger(SpokeClient.class);
+
+    private static final int MAX_RESPONSE_BYTES = HubProperties.getProperty("app.maxPayloadSizeMB", 40) * 1024 * 1024 * 2;
+
+    private final HttpClient client;
+
+    public SpokeClient() {
+        client = new HttpClient(new SslContextFactory(true));
+        QueuedThreadPool threadPool = new QueuedThreadPool(HubProperties.getProperty("spoke.client.threads", 64));
+        threadPool.setName("SpokeClient");
+        client.setExecutor(threadPool);
+        client.setMaxConnectionsPerDestination(HubProperties.getProperty("spoke.client.maxConnectionsPerServer", 32));
+        client.setMaxRequestsQueuedPerDestination(HubProperties.getProperty("spoke.client.maxQueuedPerServer", 1024));
+        client.setConnectTimeout(TimeUnit.SECONDS.toMillis(HubProperties.getProperty("spoke.client.connectTimeoutSeconds", 5)));
+        client.setIdleTimeout(TimeUnit.SECONDS.toMillis(HubProperties.getProperty("spoke.client.idleTimeoutSeconds", 60)));
+        client.setFollowRedirects(false);
+        try {
+            client.start();
+        } catch (Exception e) {
+            logger.warn("unable to start spoke client", e);
+            throw new RuntimeException(e);
+        }
+        HubServices.register(new SpokeClientService());
+    }
+
+    public CompletableFuture<ContentResponse> get(String uri, int timeoutSeconds) {
+        return send(client.newRequest(uri).method(HttpMethod.GET), timeoutSeconds);
+    }
+
+    public CompletableFuture<ContentResponse> put(String uri, byte[] payload, int timeoutSeconds) {
+        return put(uri, new BytesContentProvider(payload), timeoutSeconds);
+    }
+
+    /**
+     * @param content must be safe to send to several servers at once, as a BytesContentProvider is
+     */
+    public CompletableFuture<ContentResponse> put(String uri, ContentProvider content, int timeoutSeconds) {
+        return send(client.newRequest(uri).method(HttpMethod.PUT).content(content), timeoutSeconds);
+    }
+
+    public CompletableFuture<ContentResponse> post(String uri, byte[] payload, int timeoutSeconds) {
+        return send(client.newRequest(uri).method(HttpMethod.POST).content(new BytesContentProvider(payload)), timeoutSeconds);
+    }
+
+    public CompletableFuture<ContentResponse> delete(String uri, int timeoutSeconds) {
+        return send(client.newRequest(uri).method(HttpMethod.DELETE), timeoutSeconds);
+    }
+
+    private CompletableFuture<ContentResponse> send(Request request, int timeoutSeconds) {
+        CompletableFuture<ContentResponse> future = new CompletableFuture<>();
+        request.timeout(timeoutSeconds, TimeUnit.SECONDS)
+                .send(new BufferingResponseListener(MAX_RESPONSE_BYTES) {
+                    @Override
+                    public void onComplete(Result result) {
+                        if (result.isFailed()) {
+                            future.completeExceptionally(result.getFailure());
+                        } else {
+                            future.complete(new HttpContentResponse(result.getResponse(), getContent(), getMediaType(), getEncoding()));
+                        }
+                    }
+                });
+        return future;
+    }
+
+    private class SpokeClientService extends AbstractIdleService {
+
+        @Override
+        protected void startUp() throws Exception {
+            //started in the constructor, so it can be used before services are started
+        }
+
+        @Override
+        protected void shutDown() throws Exception {
+            client.stop();
+        }
+    }
+}
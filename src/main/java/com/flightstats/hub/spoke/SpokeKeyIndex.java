@@ -0,0 +1,462 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.model.ChannelContentKey;
+import com.flightstats.hub.util.TimeUtil;
+import com.google.common.base.Optional;
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory index of the keys held by a LocalSpokeStore, so latest, next and time bucket queries
+ * do not need to list directories.
+ * <p>
+ * Keys are held per channel, grouped by minute path (yyyy/MM/dd/HH/mm), with the item name (ssSSShash) within the minute.
+ * Both parts are fixed width, so String ordering matches ContentKey ordering.
+ * Each minute also tracks when it was last written to, which is used to expire channels by age instead of by key time.
+ */
+class SpokeKeyIndex {
+
+    private static final String END = "~";
+
+    private final Map<String, ConcurrentSkipListMap<String, Minute>> channels = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * The names of a minute, held as a sorted array of millis within the minute with a parallel array of hashes.
+     * Keys are mostly written in time order, so adds are usually appends.
+     * All access is under the minute's lock, and a minute removed from the index no longer accepts names.
+     */
+    static class Minute {
+        private int[] offsets = new int[4];
+        private String[] hashes = new String[4];
+        private int size;
+        private boolean removed;
+        private volatile long modified;
+
+        long getModified() {
+            return modified;
+        }
+
+        void touch(long time) {
+            if (time > modified) {
+                modified = time;
+            }
+        }
+
+        /**
+         * @return false if the name was already present, or null if the minute has been removed
+         */
+        synchronized Boolean add(String name) {
+            if (removed) {
+                return null;
+            }
+            int offset = offset(name);
+            String hash = name.substring(5);
+            int index = search(offset, hash);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            System.arraycopy(offsets, index, offsets, index + 1, size - index);
+            System.arraycopy(hashes, index, hashes, index + 1, size - index);
+            offsets[index] = offset;
+            hashes[index] = hash;
+            size++;
+            return true;
+        }
+
+        synchronized boolean remove(String name) {
+            if (removed) {
+                return false;
+            }
+            int index = search(offset(name), name.substring(5));
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(offsets, index + 1, offsets, index, size - index - 1);
+            System.arraycopy(hashes, index + 1, hashes, index, size - index - 1);
+            size--;
+            hashes[size] = null;
+            return true;
+        }
+
+        /**
+         * Stops the minute from accepting names, once it is no longer in the index.
+         *
+         * @return the number of names in the minute
+         */
+        synchronized int clear() {
+            removed = true;
+            return size;
+        }
+
+        synchronized String first() {
+            return size == 0 ? null : name(0);
+        }
+
+        synchronized String last() {
+            return size == 0 ? null : name(size - 1);
+        }
+
+        /**
+         * @return the greatest name less than the name, or null
+         */
+        synchronized String lower(String name) {
+            int index = search(offset(name), name.substring(5));
+            index = index >= 0 ? index - 1 : -index - 2;
+            return index < 0 ? null : name(index);
+        }
+
+        synchronized List<String> names() {
+            return names(0, size);
+        }
+
+        /**
+         * @return the names after the name, which need not be present
+         */
+        synchronized List<String> namesAfter(String name) {
+            int index = search(offset(name), name.substring(5));
+            return names(index >= 0 ? index + 1 : -index - 1, size);
+        }
+
+        /**
+         * @param second ss
+         */
+        synchronized List<String> namesInSecond(String second) {
+            int start = Integer.parseInt(second) * 1000;
+            return names(ceiling(start), ceiling(start + 1000));
+        }
+
+        private List<String> names(int from, int to) {
+            List<String> names = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++) {
+                names.add(name(i));
+            }
+            return names;
+        }
+
+        /**
+         * @return the index of the first name at or after the offset
+         */
+        private int ceiling(int offset) {
+            int index = search(offset, "");
+            return index >= 0 ? index : -index - 1;
+        }
+
+        private int search(int offset, String hash) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int compare = offsets[middle] != offset ? Integer.compare(offsets[middle], offset) : hashes[middle].compareTo(hash);
+                if (compare < 0) {
+                    low = middle + 1;
+                } else if (compare > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private String name(int index) {
+            int offset = offsets[index];
+            char[] chars = new char[5];
+            for (int i = 4; i >= 0; i--) {
+                chars[i] = (char) ('0' + offset % 10);
+                offset /= 10;
+            }
+            return new String(chars) + hashes[index];
+        }
+
+        /**
+         * @param name ssSSShash
+         * @return the millis within the minute
+         */
+        private static int offset(String name) {
+            int offset = 0;
+            for (int i = 0; i < 5; i++) {
+                offset = offset * 10 + name.charAt(i) - '0';
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * @param path channel/yyyy/MM/dd/HH/mm/ss/SSS/hash
+     */
+    void add(String path) {
+        add(path, System.currentTimeMillis());
+    }
+
+    /**
+     * @param path     channel/yyyy/MM/dd/HH/mm/ss/SSS/hash
+     * @param modified when the item was written, in millis
+     */
+    void add(String path, long modified) {
+        String[] split = StringUtils.split(path, "/");
+        if (split.length != 9) {
+            return;
+        }
+        add(split[0], minute(split, 1), split[6] + split[7] + split[8], modified);
+    }
+
+    /**
+     * @param minute   yyyy/MM/dd/HH/mm
+     * @param name     ssSSShash
+     * @param modified when the item was written, in millis
+     */
+    void add(String channel, String minute, String name, long modified) {
+        while (true) {
+            ConcurrentSkipListMap<String, Minute> minutes = channels.computeIfAbsent(channel, key -> new ConcurrentSkipListMap<>());
+            Minute names = minutes.computeIfAbsent(minute, key -> new Minute());
+            Boolean added;
+            synchronized (names) {
+                //a removed channel is taken out of channels before its minutes are cleared
+                added = channels.get(channel) == minutes ? names.add(name) : null;
+            }
+            if (added != null) {
+                names.touch(modified);
+                if (added) {
+                    size.incrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param path channel/yyyy/MM/dd/HH/mm/ss/SSS/hash
+     */
+    void remove(String path) {
+        String[] split = StringUtils.split(path, "/");
+        if (split.length != 9) {
+            return;
+        }
+        ConcurrentSkipListMap<String, Minute> minutes = channels.get(split[0]);
+        if (minutes == null) {
+            return;
+        }
+        Minute names = minutes.get(minute(split, 1));
+        if (names != null && names.remove(split[6] + split[7] + split[8])) {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Removes a channel, or a time bucket within a channel.
+     *
+     * @param path channel, or channel/yyyy[/MM[/dd[/HH[/mm]]]]
+     * @return the number of keys removed
+     */
+    long removeBucket(String path) {
+        String[] split = StringUtils.split(path, "/");
+        if (split.length == 0) {
+            return 0;
+        }
+        ConcurrentSkipListMap<String, Minute> minutes = channels.get(split[0]);
+        if (minutes == null) {
+            return 0;
+        }
+        if (split.length == 1) {
+            channels.remove(split[0]);
+        }
+        NavigableMap<String, Minute> bucket = bucket(minutes, StringUtils.substringAfter(StringUtils.strip(path, "/"), "/"));
+        long removed = 0;
+        Map.Entry<String, Minute> entry;
+        while ((entry = bucket.pollFirstEntry()) != null) {
+            removed += entry.getValue().clear();
+        }
+        size.addAndGet(-removed);
+        return removed;
+    }
+
+    /**
+     * @return the number of keys in the index
+     */
+    long size() {
+        return size.get();
+    }
+
+    /**
+     * @return the oldest key across all channels, by key time
+     */
+    Optional<ChannelContentKey> getOldest() {
+        ChannelContentKey oldest = null;
+        for (Map.Entry<String, ConcurrentSkipListMap<String, Minute>> channel : channels.entrySet()) {
+            for (Map.Entry<String, Minute> entry : channel.getValue().entrySet()) {
+                String name = entry.getValue().first();
+                if (name != null) {
+                    ChannelContentKey key = ChannelContentKey.fromChannelPath(keyPath(channel.getKey(), entry.getKey(), name));
+                    if (oldest == null || key.compareTo(oldest) < 0) {
+                        oldest = key;
+                    }
+                    break;
+                }
+            }
+        }
+        return Optional.fromNullable(oldest);
+    }
+
+    /**
+     * @param limitMinute yyyy/MM/dd/HH/mm
+     * @return the minutes of the channel before the limitMinute, in ascending order
+     */
+    List<String> getMinutesBefore(String channel, String limitMinute) {
+        ConcurrentSkipListMap<String, Minute> minutes = channels.get(channel);
+        if (minutes == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(minutes.headMap(limitMinute, false).keySet());
+    }
+
+    /**
+     * @param time millis
+     * @return the minutes of the channel which have not been written to since the time, in ascending order
+     */
+    List<String> getMinutesModifiedBefore(String channel, long time) {
+        ConcurrentSkipListMap<String, Minute> minutes = channels.get(channel);
+        if (minutes == null) {
+            return Collections.emptyList();
+        }
+        List<String> found = new ArrayList<>();
+        for (Map.Entry<String, Minute> entry : minutes.entrySet()) {
+            if (entry.getValue().getModified() < time) {
+                found.add(entry.getKey());
+            }
+        }
+        return found;
+    }
+
+    private static ConcurrentNavigableMap<String, Minute> bucket(ConcurrentSkipListMap<String, Minute> minutes,
+                                                                              String timePrefix) {
+        if (timePrefix.isEmpty()) {
+            return minutes;
+        }
+        return minutes.subMap(timePrefix, true, timePrefix + END, false);
+    }
+
+    /**
+     * Like the directory scan it replaces, this looks back to the start of the hour containing the ttlTime.
+     *
+     * @param channel   the channel to search
+     * @param limitPath yyyy/MM/dd/HH/mm/ss/SSS/hash, the returned key will be before this
+     * @param ttlTime   the oldest time to consider
+     * @return channel/yyyy/MM/dd/HH/mm/ss/SSS/hash or null
+     */
+    String getLatest(String channel, String limitPath, DateTime ttlTime) {
+        ConcurrentSkipListMap<String, Minute> minutes = channels.get(channel);
+        if (minutes == null) {
+            return null;
+        }
+        String[] split = StringUtils.split(limitPath, "/");
+        String limitMinute = minute(split, 0);
+        String limitName = split[5] + split[6] + split[7];
+        String oldestMinute = TimeUtil.hours(ttlTime) + "/00";
+        if (limitMinute.compareTo(oldestMinute) < 0) {
+            oldestMinute = limitMinute.substring(0, 13) + "/00";
+        }
+        for (Map.Entry<String, Minute> entry : minutes.subMap(oldestMinute, true, limitMinute, true).descendingMap().entrySet()) {
+            Minute names = entry.getValue();
+            String name = entry.getKey().equals(limitMinute) ? names.lower(limitName) : names.last();
+            if (name != null) {
+                return keyPath(channel, entry.getKey(), name);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the keys after the startKey in ascending order, a minute at a time, until at least count keys
+     * have been written or the current minute is reached.
+     *
+     * @param startKey yyyy/MM/dd/HH/mm/ss/SSS/hash
+     */
+    void getNext(String channel, String startKey, int count, OutputStream output) throws IOException {
+        ConcurrentSkipListMap<String, Minute> minutes = channels.get(channel);
+        if (minutes == null) {
+            return;
+        }
+        String[] split = StringUtils.split(startKey, "/");
+        String startMinute = minute(split, 0);
+        String startName = split[5] + split[6] + split[7];
+        String limitMinute = TimeUtil.minutes(TimeUtil.now());
+        if (limitMinute.compareTo(startMinute) < 0) {
+            return;
+        }
+        int found = 0;
+        for (Map.Entry<String, Minute> entry : minutes.subMap(startMinute, true, limitMinute, true).entrySet()) {
+            if (found >= count) {
+                return;
+            }
+            Minute minute = entry.getValue();
+            List<String> names = entry.getKey().equals(startMinute) ? minute.namesAfter(startName) : minute.names();
+            for (String name : names) {
+                found++;
+                writeKey(output, keyPath(channel, entry.getKey(), name));
+            }
+        }
+    }
+
+    /**
+     * @param path channel/yyyy[/MM[/dd[/HH[/mm[/ss]]]]]
+     */
+    void keysInBucket(String path, OutputStream output) throws IOException {
+        String[] split = StringUtils.split(path, "/");
+        if (split.length == 0) {
+            return;
+        }
+        String channel = split[0];
+        ConcurrentSkipListMap<String, Minute> minutes = channels.get(channel);
+        if (minutes == null) {
+            return;
+        }
+        if (split.length >= 7) {
+            Minute names = minutes.get(minute(split, 1));
+            if (names != null) {
+                for (String name : names.namesInSecond(split[6])) {
+                    writeKey(output, keyPath(channel, minute(split, 1), name));
+                }
+            }
+            return;
+        }
+        String timePrefix = StringUtils.substringAfter(StringUtils.strip(path, "/"), "/");
+        for (Map.Entry<String, Minute> entry : bucket(minutes, timePrefix).entrySet()) {
+            for (String name : entry.getValue().names()) {
+                writeKey(output, keyPath(channel, entry.getKey(), name));
+            }
+        }
+    }
+
+    private static String minute(String[] split, int start) {
+        return split[start] + "/" + split[start + 1] + "/" + split[start + 2] + "/" + split[start + 3] + "/" + split[start + 4];
+    }
+
+    private static String keyPath(String channel, String minute, String name) {
+        return channel + "/" + minute + "/" + name.substring(0, 2) + "/" + name.substring(2, 5) + "/" + name.substring(5);
+    }
+
+    private static void writeKey(OutputStream output, String keyPath) throws IOException {
+        output.write(keyPath.getBytes());
+        output.write(",".getBytes());
+    }
+
+}
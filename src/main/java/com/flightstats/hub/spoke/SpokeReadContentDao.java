@@ -9,11 +9,14 @@ import com.flightstats.hub.metrics.Traces;
 import com.flightstats.hub.model.*;
 import com.google.common.base.Optional;
 import org.apache.commons.lang3.NotImplementedException;
+import org.eclipse.jetty.client.util.BytesContentProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 import java.util.SortedSet;
 
 public class SpokeReadContentDao implements ContentDao {
@@ -30,9 +33,9 @@ public class SpokeReadContentDao implements ContentDao {
 
     @Override
     public SortedSet<ContentKey> insert(BulkContent bulkContent) throws Exception {
-        return SpokeContentDao.insert(bulkContent, (baos) -> {
+        return SpokeContentDao.insert(bulkContent, (frames) -> {
             String channel = bulkContent.getChannel();
-            return spokeStore.insert(SpokeStore.READ, channel, baos.toByteArray(), Cluster.getLocalServer(), ActiveTraces.getLocal(), "bulkKey", channel);
+            return spokeStore.insert(SpokeStore.READ, channel, new BytesContentProvider(frames), Cluster.getLocalServer(), ActiveTraces.getLocal(), "bulkKey", channel);
         });
     }
 
@@ -55,6 +58,20 @@ public class SpokeReadContentDao implements ContentDao {
         }
     }
 
+    @Override
+    public Map<ContentKey, Content> getAll(String channelName, Collection<ContentKey> keys) {
+        Traces traces = ActiveTraces.getLocal();
+        traces.add("SpokeReadContentDao.getAll", keys.size());
+        try {
+            return spokeStore.get(SpokeStore.READ, channelName, keys);
+        } catch (Exception e) {
+            logger.warn("unable to get data: " + channelName, e);
+            return Collections.emptyMap();
+        } finally {
+            traces.add("SpokeReadContentDao.getAll completed");
+        }
+    }
+
     @Override
     public SortedSet<ContentKey> queryByTime(TimeQuery query) {
         logger.trace("query by time {} ", query);
@@ -0,0 +1,53 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.util.ObjectRing;
+
+import java.util.List;
+
+/**
+ * Tracks recent Spoke read latencies, to decide how long to wait for a server before sending a hedged read to another.
+ * The delay is the configured percentile of recent reads, bounded by the min and max, and is recalculated at most once per second.
+ */
+class SpokeReadLatency {
+
+    private static final long REFRESH_MILLIS = 1000;
+
+    private final ObjectRing<Long> latencies;
+    private final double percentile;
+    private final long minMillis;
+    private final long maxMillis;
+    private volatile long delayMillis;
+    private volatile long refreshed;
+
+    SpokeReadLatency(int samples, double percentile, long minMillis, long maxMillis) {
+        this.latencies = new ObjectRing<>(samples);
+        this.percentile = percentile;
+        this.minMillis = minMillis;
+        this.maxMillis = maxMillis;
+        this.delayMillis = maxMillis;
+    }
+
+    void record(long millis) {
+        latencies.put(millis);
+    }
+
+    long getDelayMillis() {
+        long now = System.currentTimeMillis();
+        if (now - refreshed > REFRESH_MILLIS) {
+            refreshed = now;
+            delayMillis = calculate();
+        }
+        return delayMillis;
+    }
+
+    private long calculate() {
+        List<Long> items = latencies.getItems();
+        if (items.isEmpty()) {
+            return maxMillis;
+        }
+        items.sort(null);
+        int index = (int) Math.ceil(percentile / 100 * items.size()) - 1;
+        long value = items.get(Math.max(0, Math.min(index, items.size() - 1)));
+        return Math.max(minMillis, Math.min(maxMillis, value));
+    }
+}
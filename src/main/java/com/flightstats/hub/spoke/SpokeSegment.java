@@ -0,0 +1,273 @@
+package com.flightstats.hub.spoke;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A single append-only file holding all of the items for one channel and minute.
+ * <p>
+ * The file starts with a 4 byte magic number, followed by records of
+ * [int nameLength][name][int payloadLength][payload], where name is "ssSSShash" for the item.
+ * A payloadLength of -1 is a tombstone for a deleted item.
+ * <p>
+ * The offset table of the segment is held in memory, and is rebuilt from the record headers when the segment is opened.
+ * Items only become visible in the offset table once their record has been completely written.
+ * <p>
+ * A segment must only be open once per file, as opening it truncates any incomplete record at the end.
+ * Users pin the segment with acquire and release, and a retired segment is closed once it is no longer in use.
+ */
+class SpokeSegment {
+
+    private final static Logger logger = LoggerFactory.getLogger(SpokeSegment.class);
+
+    static final int MAGIC = 0x53504b31;
+    private static final int HEADER_SIZE = 4;
+    private static final int MAX_NAME_LENGTH = 1024;
+    private static final int TOMBSTONE = -1;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final ConcurrentSkipListMap<String, long[]> offsets = new ConcurrentSkipListMap<>();
+    private volatile FileChannel channel;
+    private long end;
+    private volatile boolean closed;
+    private int users;
+    private boolean retired;
+
+    SpokeSegment(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            open();
+            scan();
+        }
+    }
+
+    /**
+     * @return the item names in this segment, in ascending order
+     */
+    NavigableSet<String> getNames() {
+        return offsets.keySet();
+    }
+
+    boolean contains(String name) {
+        return offsets.containsKey(name);
+    }
+
+    /**
+     * @param payload buffers which are written from their positions to their limits
+     */
+    synchronized void append(String name, ByteBuffer... payload) throws IOException {
+        checkOpen();
+        long length = 0;
+        for (ByteBuffer buffer : payload) {
+            length += buffer.remaining();
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("item is too large for a segment " + file + " " + name);
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(4 + nameBytes.length + 4);
+        header.putInt(nameBytes.length).put(nameBytes).putInt((int) length).flip();
+        long recordStart = end;
+        write(recordStart, header);
+        write(recordStart + header.capacity(), payload);
+        end = recordStart + header.capacity() + length;
+        offsets.put(name, new long[]{recordStart + header.capacity(), length});
+    }
+
+    synchronized boolean remove(String name) throws IOException {
+        checkClosed();
+        if (channel == null || !offsets.containsKey(name)) {
+            return false;
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer tombstone = ByteBuffer.allocate(4 + nameBytes.length + 4);
+        tombstone.putInt(nameBytes.length).put(nameBytes).putInt(TOMBSTONE).flip();
+        write(end, tombstone);
+        end += tombstone.capacity();
+        offsets.remove(name);
+        return true;
+    }
+
+    /**
+     * @return false if the item is not in this segment
+     */
+    boolean read(String name, OutputStream output) throws IOException {
+        long[] entry = offsets.get(name);
+        if (entry == null) {
+            return false;
+        }
+        checkClosed();
+        long position = entry[0];
+        long remaining = entry[1];
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(remaining, COPY_BUFFER_SIZE));
+        while (remaining > 0) {
+            buffer.clear();
+            buffer.limit((int) Math.min(remaining, buffer.capacity()));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of segment " + file + " " + name);
+            }
+            output.write(buffer.array(), 0, read);
+            position += read;
+            remaining -= read;
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the segment has been closed
+     */
+    synchronized boolean acquire() {
+        if (closed) {
+            return false;
+        }
+        users++;
+        return true;
+    }
+
+    /**
+     * @return true if the segment is closed
+     */
+    synchronized boolean release() {
+        users--;
+        return closeIfUnused();
+    }
+
+    /**
+     * Closes the segment once it is no longer in use.
+     *
+     * @return true if the segment is closed
+     */
+    synchronized boolean retire() {
+        retired = true;
+        return closeIfUnused();
+    }
+
+    /**
+     * Keeps a retired segment open, for reuse by the next load of the file.
+     *
+     * @return false if the segment has already been closed
+     */
+    synchronized boolean revive() {
+        if (closed) {
+            return false;
+        }
+        retired = false;
+        return true;
+    }
+
+    private boolean closeIfUnused() {
+        if (retired && users == 0 && !closed) {
+            close();
+        }
+        return closed;
+    }
+
+    synchronized void close() {
+        closed = true;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.info("unable to close " + file, e);
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        checkClosed();
+        if (channel == null) {
+            file.getParentFile().mkdirs();
+            open();
+        }
+    }
+
+    private void checkClosed() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer magic = ByteBuffer.allocate(HEADER_SIZE);
+            magic.putInt(MAGIC).flip();
+            channel.truncate(0);
+            write(0, magic);
+        }
+        end = HEADER_SIZE;
+    }
+
+    private void scan() throws IOException {
+        long size = channel.size();
+        ByteBuffer magic = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(magic, 0);
+        if (magic.getInt(0) != MAGIC) {
+            logger.warn("unexpected segment format, truncating {}", file);
+            channel.truncate(HEADER_SIZE);
+            magic.clear();
+            magic.putInt(MAGIC).flip();
+            write(0, magic);
+            return;
+        }
+        ByteBuffer length = ByteBuffer.allocate(4);
+        long position = HEADER_SIZE;
+        while (position + 8 <= size) {
+            int nameLength = readInt(length, position);
+            if (nameLength <= 0 || nameLength > MAX_NAME_LENGTH || position + 8 + nameLength > size) {
+                break;
+            }
+            ByteBuffer nameBuffer = ByteBuffer.allocate(nameLength);
+            channel.read(nameBuffer, position + 4);
+            String name = new String(nameBuffer.array(), StandardCharsets.UTF_8);
+            int payloadLength = readInt(length, position + 4 + nameLength);
+            long payloadStart = position + 8 + nameLength;
+            if (payloadLength == TOMBSTONE) {
+                offsets.remove(name);
+                position = payloadStart;
+            } else if (payloadLength >= 0 && payloadStart + payloadLength <= size) {
+                offsets.put(name, new long[]{payloadStart, payloadLength});
+                position = payloadStart + payloadLength;
+            } else {
+                break;
+            }
+        }
+        if (position < size) {
+            logger.info("truncating incomplete segment {} from {} to {}", file, size, position);
+            channel.truncate(position);
+        }
+        end = position;
+    }
+
+    private int readInt(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return -2;
+            }
+        }
+        return buffer.getInt(0);
+    }
+
+    private void write(long position, ByteBuffer... buffers) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+}
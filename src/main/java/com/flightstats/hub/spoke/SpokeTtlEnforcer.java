@@ -1,13 +1,13 @@
 package com.flightstats.hub.spoke;
 
 import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.app.HubProvider;
 import com.flightstats.hub.app.HubServices;
 import com.flightstats.hub.dao.ChannelService;
 import com.flightstats.hub.dao.TtlEnforcer;
 import com.flightstats.hub.metrics.MetricsService;
 import com.flightstats.hub.model.ChannelConfig;
 import com.flightstats.hub.model.ChannelContentKey;
-import com.flightstats.hub.util.FileUtils;
 import com.flightstats.hub.util.TimeUtil;
 import com.google.common.base.Optional;
 import com.google.common.util.concurrent.AbstractScheduledService;
@@ -37,9 +37,6 @@ public class SpokeTtlEnforcer {
     @Inject
     private MetricsService metricsService;
 
-    @Inject
-    private SpokeContentDao spokeContentDao;
-
     public SpokeTtlEnforcer(SpokeStore spokeStore) {
         this.spokeStore = spokeStore;
         this.storagePath = HubProperties.getSpokePath(spokeStore);
@@ -51,34 +48,33 @@ public class SpokeTtlEnforcer {
 
     private Consumer<ChannelConfig> handleCleanup(AtomicLong evictionCounter) {
         return channel -> {
-            int itemsEvicted = 0;
-            String channelPath = storagePath + "/" + channel.getDisplayName();
+            long itemsEvicted = 0;
+            String channelName = channel.getDisplayName();
+            LocalSpokeStore localSpokeStore = getLocalSpokeStore();
             if (channel.isLive()) {
                 DateTime ttlDateTime = TimeUtil.stable().minusMinutes(ttlMinutes + 1);
-                for (int i = 0; i < 2; i++) {
-                    itemsEvicted += removeFromChannelByTime(channelPath, TimeUtil.minutes(ttlDateTime.minusMinutes(i)));
-                    itemsEvicted += removeFromChannelByTime(channelPath, TimeUtil.hours(ttlDateTime.minusHours(i + 1)));
-                    itemsEvicted += removeFromChannelByTime(channelPath, TimeUtil.days(ttlDateTime.minusDays(i + 1)));
-                    itemsEvicted += removeFromChannelByTime(channelPath, TimeUtil.months(ttlDateTime.minusMonths(i + 1)));
-                }
+                itemsEvicted += localSpokeStore.evictBefore(channelName, ttlDateTime);
+                //the index only knows about complete items, so also clear out whole hours and days which have expired
+                itemsEvicted += localSpokeStore.evict(channelName + "/" + TimeUtil.hours(ttlDateTime.minusHours(1)));
+                itemsEvicted += localSpokeStore.evict(channelName + "/" + TimeUtil.days(ttlDateTime.minusDays(1)));
             } else {
-                int waitTimeSeconds = 3;
-                itemsEvicted += FileUtils.deleteFilesByAge(channelPath, ttlMinutes, waitTimeSeconds);
+                long modifiedTime = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(ttlMinutes);
+                itemsEvicted += localSpokeStore.evictUnmodifiedSince(channelName, modifiedTime);
             }
             evictionCounter.getAndAdd(itemsEvicted);
         };
     }
 
-    private long removeFromChannelByTime(String channelPath, String timePath) {
-        String path = channelPath + "/" + timePath;
-        int waitTimeSeconds = 3;
-        return FileUtils.deleteFiles(path, waitTimeSeconds);
+    private LocalSpokeStore getLocalSpokeStore() {
+        return HubProvider.getInstance(LocalSpokeStore.class, spokeStore.name());
     }
 
-    private void updateOldestItemMetric() {
-        Optional<ChannelContentKey> potentialItem = spokeContentDao.getOldestItem(spokeStore);
+    private void updateItemMetrics() {
+        LocalSpokeStore localSpokeStore = getLocalSpokeStore();
+        Optional<ChannelContentKey> potentialItem = localSpokeStore.getOldest();
         long oldestItemAgeMS = potentialItem.isPresent() ? potentialItem.get().getAgeMS() : 0;
         metricsService.gauge(buildMetricName("age", "oldest"), oldestItemAgeMS);
+        metricsService.gauge(buildMetricName("items"), localSpokeStore.getItemCount());
     }
 
     private String buildMetricName(String... elements) {
@@ -94,8 +90,9 @@ public class SpokeTtlEnforcer {
                 long start = System.currentTimeMillis();
                 AtomicLong evictionCounter = new AtomicLong(0);
                 logger.info("running ttl cleanup");
-                TtlEnforcer.enforce(storagePath, channelService, handleCleanup(evictionCounter));
-                updateOldestItemMetric();
+                TtlEnforcer.enforce(storagePath, channelService, handleCleanup(evictionCounter),
+                        dir -> evictionCounter.getAndAdd(getLocalSpokeStore().evict(dir)));
+                updateItemMetrics();
                 metricsService.gauge(buildMetricName("evicted"), evictionCounter.get());
                 long runtime = (System.currentTimeMillis() - start);
                 logger.info("completed ttl cleanup {}", runtime);
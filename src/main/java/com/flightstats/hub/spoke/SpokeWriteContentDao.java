@@ -11,12 +11,16 @@ import com.flightstats.hub.metrics.Traces;
 import com.flightstats.hub.model.*;
 import com.flightstats.hub.util.TimeUtil;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedSet;
 import com.google.inject.Inject;
+import org.eclipse.jetty.client.util.BytesContentProvider;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -38,7 +42,8 @@ public class SpokeWriteContentDao implements ContentDao {
     public ContentKey insert(String channelName, Content content) throws Exception {
         ContentKey key = content.getContentKey().get();
         String path = getPath(channelName, key);
-        if (!spokeStore.insert(SpokeStore.WRITE, path, content.getData(), "payload", channelName)) {
+        BuffersContentProvider payload = new BuffersContentProvider(content.getDataBuffers());
+        if (!spokeStore.insert(SpokeStore.WRITE, path, payload, "payload", channelName, ImmutableSortedSet.of(key))) {
             throw new FailedWriteException("unable to write to spoke " + path);
         }
         return key;
@@ -46,9 +51,13 @@ public class SpokeWriteContentDao implements ContentDao {
 
     @Override
     public SortedSet<ContentKey> insert(BulkContent bulkContent) throws Exception {
-        return SpokeContentDao.insert(bulkContent, (baos) -> {
+        return SpokeContentDao.insert(bulkContent, (frames) -> {
             String channel = bulkContent.getChannel();
-            return spokeStore.insert(SpokeStore.WRITE, channel, baos.toByteArray(), "bulkKey", channel);
+            SortedSet<ContentKey> keys = new TreeSet<>();
+            for (Content content : bulkContent.getItems()) {
+                keys.add(content.getContentKey().get());
+            }
+            return spokeStore.insert(SpokeStore.WRITE, channel, new BytesContentProvider(frames), "bulkKey", channel, keys);
         });
     }
 
@@ -91,6 +100,20 @@ public class SpokeWriteContentDao implements ContentDao {
         throw new UnsupportedOperationException("deleteBefore is not supported");
     }
 
+    @Override
+    public Map<ContentKey, Content> getAll(String channelName, Collection<ContentKey> keys) {
+        Traces traces = ActiveTraces.getLocal();
+        traces.add("SpokeWriteContentDao.getAll", keys.size());
+        try {
+            return spokeStore.get(SpokeStore.WRITE, channelName, keys);
+        } catch (Exception e) {
+            logger.warn("unable to get data: " + channelName, e);
+            return Collections.emptyMap();
+        } finally {
+            traces.add("SpokeWriteContentDao.getAll completed");
+        }
+    }
+
     @Override
     public SortedSet<ContentKey> queryByTime(TimeQuery query) {
         logger.trace("query by time {} ", query);
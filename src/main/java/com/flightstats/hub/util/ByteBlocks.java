@@ -0,0 +1,128 @@
+package com.flightstats.hub.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An OutputStream which collects bytes in a list of blocks, so that growing never copies the bytes already written,
+ * as a ByteArrayOutputStream does.
+ * Each new block is the size of everything written so far, between 8KB and 1MB.
+ * The blocks can be sent as they are with {@link #toBuffers()}.
+ */
+public class ByteBlocks extends OutputStream {
+
+    private static final int MIN_BLOCK = 8 * 1024;
+    private static final int MAX_BLOCK = 1024 * 1024;
+
+    private final List<byte[]> blocks = new ArrayList<>();
+    private byte[] current;
+    private int position;
+    private int size;
+
+    /**
+     * @param initialSize the size of the first block, which is best as the expected size of the bytes
+     */
+    public ByteBlocks(int initialSize) {
+        current = new byte[Math.max(16, initialSize)];
+        blocks.add(current);
+    }
+
+    @Override
+    public void write(int b) {
+        if (position == current.length) {
+            addBlock();
+        }
+        current[position++] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        if (size + (long) length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("blocks are limited to " + Integer.MAX_VALUE + " bytes");
+        }
+        size += length;
+        while (length > 0) {
+            if (position == current.length) {
+                addBlock();
+            }
+            int copy = Math.min(length, current.length - position);
+            System.arraycopy(bytes, offset, current, position, copy);
+            position += copy;
+            offset += copy;
+            length -= copy;
+        }
+    }
+
+    private void addBlock() {
+        current = new byte[Math.min(MAX_BLOCK, Math.max(MIN_BLOCK, size))];
+        blocks.add(current);
+        position = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Overwrites the big-endian int at index, which must already have been written.
+     */
+    public void putInt(int index, int value) {
+        for (int i = 0; i < 4; i++) {
+            put(index + i, (byte) (value >>> (24 - i * 8)));
+        }
+    }
+
+    private void put(int index, byte value) {
+        for (byte[] block : blocks) {
+            if (index < block.length) {
+                block[index] = value;
+                return;
+            }
+            index -= block.length;
+        }
+        throw new IndexOutOfBoundsException("index beyond the blocks " + index);
+    }
+
+    /**
+     * @return the bytes, which is the first block without a copy when it holds all of them exactly
+     */
+    public byte[] toByteArray() {
+        if (blocks.size() == 1 && position == current.length) {
+            return current;
+        }
+        byte[] bytes = new byte[size];
+        int offset = 0;
+        for (byte[] block : blocks) {
+            int length = block == current ? position : block.length;
+            System.arraycopy(block, 0, bytes, offset, length);
+            offset += length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the bytes to the output a block at a time, without joining them.
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        for (byte[] block : blocks) {
+            output.write(block, 0, block == current ? position : block.length);
+        }
+    }
+
+    /**
+     * @return read only buffers over the blocks, which share the bytes without copying them
+     */
+    public ByteBuffer[] toBuffers() {
+        ByteBuffer[] buffers = new ByteBuffer[blocks.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            byte[] block = blocks.get(i);
+            int length = block == current ? position : block.length;
+            buffers[i] = ByteBuffer.wrap(block, 0, length).asReadOnlyBuffer();
+        }
+        return buffers;
+    }
+}
@@ -1,5 +1,8 @@
 package com.flightstats.hub.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
 public class Chunk {
 
     private int count;
@@ -26,6 +29,16 @@ public class Chunk {
         return true;
     }
 
+    /**
+     * @return the number of bytes added, which is less than length when the chunk fills
+     */
+    int add(byte[] source, int offset, int length) {
+        int added = Math.min(length, chunkSize - index);
+        System.arraycopy(source, offset, bytes, index, added);
+        index += added;
+        return added;
+    }
+
     boolean isFull() {
         return index >= chunkSize;
     }
@@ -43,6 +56,21 @@ public class Chunk {
         return partial;
     }
 
+    /**
+     * @return the bytes of the chunk, without copying a partial chunk
+     */
+    public InputStream getStream() {
+        return new ByteArrayInputStream(bytes, 0, index);
+    }
+
+    public int getLength() {
+        return index;
+    }
+
+    int getSize() {
+        return chunkSize;
+    }
+
     public int getCount() {
         return count;
     }
@@ -1,9 +1,11 @@
 package com.flightstats.hub.util;
 
+import com.flightstats.hub.app.HubProperties;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,50 +15,181 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
+/**
+ * Splits a stream into chunks sized by {@link ChunkStrategy}, and uploads each chunk with the chunk function.
+ * <p>
+ * Uploads run on a pool of s3.chunk.uploadThreads shared by all streams, with at most threads chunks of one stream
+ * in flight.  The memory held by chunks across all streams is limited to s3.chunk.maxBufferedMB, so a writer waits
+ * for uploads to complete before it starts a chunk beyond that.
+ * A stream which is not closed must be aborted, to give back the memory of its chunk.
+ */
 public class ChunkOutputStream extends OutputStream {
     private static final Logger logger = LoggerFactory.getLogger(ChunkOutputStream.class);
 
-    private ListeningExecutorService service;
-    private List<ListenableFuture<String>> futures = new ArrayList<>();
-    private int count = 1;
-    private Chunk chunk = new Chunk(count, ChunkStrategy.getSize(count));
-    private Function<Chunk, String> chunkFunction;
+    private static final int MEGABYTES = 1024 * 1024;
+    private static final int MAX_BUFFERED_MB = HubProperties.getProperty("s3.chunk.maxBufferedMB",
+            (int) Math.max(64, Runtime.getRuntime().maxMemory() / 4 / MEGABYTES));
+    private static final Semaphore bufferedMB = new Semaphore(MAX_BUFFERED_MB);
+    private static final int ABORT_WAIT_SECONDS = HubProperties.getProperty("s3.chunk.abortWaitSeconds", 120);
+    private static final ListeningExecutorService uploadPool = MoreExecutors.listeningDecorator(
+            Executors.newFixedThreadPool(HubProperties.getProperty("s3.chunk.uploadThreads", 20),
+                    new ThreadFactoryBuilder().setNameFormat("ChunkOutputStream-%d").setDaemon(true).build()));
 
+    private final Semaphore inFlight;
+    private final List<ListenableFuture<String>> futures = new ArrayList<>();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private final Function<Chunk, String> chunkFunction;
+    private int count = 0;
+    private Chunk chunk;
+    private volatile boolean closed;
+    private boolean aborted;
+
+    /**
+     * @param threads the most chunks of this stream to upload at once
+     */
     public ChunkOutputStream(int threads, Function<Chunk, String> chunkFunction) {
         this.chunkFunction = chunkFunction;
-        service = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads));
+        inFlight = new Semaphore(Math.max(1, threads));
         logger.info("creating ChunkOutputStream with {} threads", threads);
     }
 
     public void write(int b) throws IOException {
-        if (!chunk.add(b)) {
-            sendChunk(chunk);
+        Chunk current = getChunk();
+        current.add(b);
+        if (current.isFull()) {
+            sendChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            Chunk current = getChunk();
+            int added = current.add(bytes, offset, length);
+            offset += added;
+            length -= added;
+            if (current.isFull()) {
+                sendChunk();
+            }
+        }
+    }
+
+    /**
+     * Waits for memory before creating the next chunk.
+     */
+    private Chunk getChunk() throws IOException {
+        if (closed) {
+            throw new IOException("stream is closed");
+        }
+        if (chunk == null) {
             count++;
-            chunk = new Chunk(count, ChunkStrategy.getSize(count));
-            chunk.add(b);
+            int size = ChunkStrategy.getSize(count);
+            acquire(bufferedMB, megabytes(size));
+            chunk = new Chunk(count, size);
         }
+        return chunk;
     }
 
-    private void sendChunk(Chunk chunk) {
-        futures.add(service.submit(() -> chunkFunction.apply(chunk)));
+    private void sendChunk() throws IOException {
+        Exception exception = failure.get();
+        if (exception != null) {
+            throw new IOException("unable to upload a chunk", exception);
+        }
+        Chunk sending = chunk;
+        chunk = null;
+        try {
+            acquire(inFlight, 1);
+        } catch (RuntimeInterruptedException e) {
+            release(sending);
+            throw e;
+        }
+        futures.add(uploadPool.submit(() -> {
+            try {
+                if (failure.get() != null) {
+                    return "skipped";
+                }
+                return chunkFunction.apply(sending);
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                inFlight.release();
+                release(sending);
+            }
+        }));
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            throw new RuntimeInterruptedException(e);
+        }
+    }
+
+    private static void release(Chunk chunk) {
+        bufferedMB.release(megabytes(chunk.getSize()));
+    }
+
+    /**
+     * A chunk larger than the limit takes all of it, so it can still be written.
+     */
+    private static int megabytes(int size) {
+        return Math.min(MAX_BUFFERED_MB, Math.max(1, size / MEGABYTES));
     }
 
     @Override
     public void close() throws IOException {
-        if (chunk.hasData()) {
-            sendChunk(chunk);
+        if (closed) {
+            return;
+        }
+        if (chunk != null) {
+            sendChunk();
         }
+        closed = true;
         ListenableFuture<String> allFutures = Futures.whenAllSucceed(futures).call(() -> "ok", MoreExecutors.directExecutor());
         try {
             allFutures.get();
         } catch (InterruptedException e) {
             throw new RuntimeInterruptedException(e);
         } catch (ExecutionException e) {
+            drain();
             throw new RuntimeException(e);
-        } finally {
-            service.shutdown();
+        }
+    }
+
+    /**
+     * Stops the stream, skipping chunks which have not started uploading, and waits up to s3.chunk.abortWaitSeconds
+     * for the uploads which have started, so no parts are uploaded after it returns.
+     * This holds after a failed close as well.
+     */
+    public void abort() {
+        if (aborted) {
+            return;
+        }
+        aborted = true;
+        closed = true;
+        failure.compareAndSet(null, new IOException("aborted"));
+        if (chunk != null) {
+            release(chunk);
+            chunk = null;
+        }
+        drain();
+    }
+
+    private void drain() {
+        try {
+            Futures.successfulAsList(futures).get(ABORT_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeInterruptedException(e);
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("uploads still running after abort", e);
         }
     }
 }
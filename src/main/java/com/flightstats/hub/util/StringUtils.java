@@ -1,15 +1,20 @@
 package com.flightstats.hub.util;
 
 
-import org.apache.commons.text.RandomStringGenerator;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class StringUtils {
-    static final RandomStringGenerator generator = new RandomStringGenerator.Builder()
-            .withinRange('0', 'z')
-            .filteredBy(Character::isLetter, Character::isDigit)
-            .build();
+    private static final char[] ALPHANUMERIC = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
 
+    /**
+     * Uses ThreadLocalRandom, so concurrent callers do not contend on a shared seed.
+     */
     static public String randomAlphaNumeric(int length) {
-        return generator.generate(length);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHANUMERIC[random.nextInt(ALPHANUMERIC.length)];
+        }
+        return new String(chars);
     }
 }
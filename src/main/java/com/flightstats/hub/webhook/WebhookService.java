@@ -104,6 +104,13 @@ public class WebhookService {
         return Optional.fromNullable(webhookDao.get(name));
     }
 
+    /**
+     * @return the last path the webhook has completed, or null if it has none
+     */
+    public ContentPath getLastCompleted(String name) {
+        return lastContentPath.getOrNull(name, WEBHOOK_LAST_COMPLETED);
+    }
+
     Optional<Webhook> getCached(String name) {
         return Optional.fromNullable(webhookDao.getCached(name));
     }
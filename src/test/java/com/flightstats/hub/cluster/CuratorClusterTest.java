@@ -2,13 +2,18 @@ package com.flightstats.hub.cluster;
 
 import com.flightstats.hub.test.Integration;
 import com.flightstats.hub.util.Sleeper;
+import com.google.common.collect.Lists;
 import org.apache.curator.framework.CuratorFramework;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -47,4 +52,16 @@ public class CuratorClusterTest {
         assertEquals(0, servers.size());
     }
 
+    @Test
+    public void testRank() {
+        List<String> servers = Arrays.asList("10.0.0.1:8080", "10.0.0.2:8080", "10.0.0.3:8080", "10.0.0.4:8080", "10.0.0.5:8080");
+        List<String> ranked = CuratorCluster.rank("channel/2014/11/18/00", servers);
+        assertEquals(new HashSet<>(servers), new HashSet<>(ranked));
+        assertEquals(ranked, CuratorCluster.rank("channel/2014/11/18/00", Lists.reverse(servers)));
+
+        List<String> fewer = new ArrayList<>(ranked);
+        fewer.remove(ranked.get(4));
+        assertEquals(fewer, CuratorCluster.rank("channel/2014/11/18/00", fewer));
+    }
+
 }
\ No newline at end of file
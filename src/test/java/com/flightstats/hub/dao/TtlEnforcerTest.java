@@ -0,0 +1,63 @@
+package com.flightstats.hub.dao;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.model.ChannelConfig;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TtlEnforcerTest {
+
+    private File root;
+    private ChannelService channelService;
+    private String writePath;
+    private String journalPath;
+
+    @Before
+    public void setUp() {
+        writePath = HubProperties.getProperty("spoke.write.path", "/spoke/write");
+        journalPath = HubProperties.getS3WriteQueuePath();
+        root = Files.createTempDir();
+        channelService = mock(ChannelService.class);
+        when(channelService.getChannels()).thenReturn(Collections.singletonList(ChannelConfig.builder().name("channel1").build()));
+    }
+
+    @After
+    public void tearDown() {
+        HubProperties.setProperty("spoke.write.path", writePath);
+        HubProperties.setProperty("s3.writeQueuePath", journalPath);
+    }
+
+    @Test
+    public void testSkipsS3WriteQueue() {
+        File journal = new File(root, "s3WriteQueue");
+        HubProperties.setProperty("s3.writeQueuePath", journal.getPath());
+        assertTrue(journal.mkdirs());
+        assertTrue(new File(root, "channel1").mkdirs());
+        assertTrue(new File(root, "deleted").mkdirs());
+
+        List<String> channels = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        TtlEnforcer.enforce(root.getPath(), channelService, channel -> channels.add(channel.getDisplayName()), removed::add);
+        assertEquals(Collections.singletonList("channel1"), channels);
+        assertEquals(Collections.singletonList("deleted"), removed);
+    }
+
+    @Test
+    public void testDefaultJournalIsOutsideSpoke() {
+        HubProperties.setProperty("s3.writeQueuePath", "");
+        HubProperties.setProperty("spoke.write.path", new File(root, "write").getPath());
+        File journal = new File(HubProperties.getS3WriteQueuePath());
+        assertEquals(new File(root, "s3WriteQueue").getAbsoluteFile(), journal);
+    }
+}
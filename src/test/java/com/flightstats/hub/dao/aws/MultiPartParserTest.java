@@ -8,7 +8,11 @@ import org.joda.time.DateTime;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -186,4 +190,52 @@ public class MultiPartParserTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testLargeItemsAcrossBlocks() throws IOException {
+        StringBuilder data = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String item = StringUtils.repeat("item" + i + "\r\n-", 20_000 + i);
+            expected.add(item);
+            data.append("--frontier\r\n").append("Content-Type: text/plain\r\n\r\n").append(item).append("\r\n");
+        }
+        data.append("--frontier--");
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(data.toString().getBytes())) {
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                return super.read(bytes, offset, Math.min(length, 997));
+            }
+        };
+        BulkContent bulkContent = BulkContent.builder()
+                .stream(trickle)
+                .contentType("multipart/mixed; boundary=frontier")
+                .isNew(true)
+                .build();
+        List<Content> handedOff = new ArrayList<>();
+        new MultiPartParser(bulkContent).parse(handedOff::add);
+        assertEquals(5, bulkContent.getItems().size());
+        assertEquals(bulkContent.getItems(), handedOff);
+        for (int i = 0; i < 5; i++) {
+            Content item = bulkContent.getItems().get(i);
+            assertEquals(expected.get(i), new String(item.getData()));
+            assertTrue(StringUtils.endsWith(item.getContentKey().get().getHash(), "00000" + i));
+        }
+    }
+
+    @Test
+    public void testBoundaryInData() throws IOException {
+        String data = "--boundary\r\n" +
+                "\r\n" +
+                "before\r\n--boundaryX--boundary\r\n" +
+                "--boundary--";
+
+        BulkContent bulkContent = BulkContent.builder()
+                .stream(new ByteArrayInputStream(data.getBytes()))
+                .contentType("multipart/mixed; boundary=boundary")
+                .build();
+        new MultiPartParser(bulkContent).parse();
+        assertEquals(1, bulkContent.getItems().size());
+        assertEquals("before\r\n--boundaryX--boundary", new String(bulkContent.getItems().get(0).getData()));
+    }
+
+}
@@ -10,6 +10,7 @@ import com.flightstats.hub.util.StringUtils;
 import com.flightstats.hub.util.TimeUtil;
 import com.google.inject.Injector;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -120,6 +121,22 @@ public class S3BatchContentDaoTest {
         query(channel, start.plusMinutes(66), 2, TimeUtil.Unit.HOURS);
     }
 
+    @Test
+    public void testRollupHour() throws IOException {
+        String channel = "testRollupHour" + StringUtils.randomAlphaNumeric(20);
+        DateTime hour = new DateTime(2016, 3, 4, 5, 0, DateTimeZone.UTC);
+        for (int i = 0; i < 6; i++) {
+            writeBatchMinute(channel, new MinutePath(hour.plusMinutes(i * 10)), 2);
+        }
+        writeBatchMinute(channel, new MinutePath(hour.plusHours(1)), 3);
+        assertEquals(12, contentDao.rollupHour(channel, hour));
+        query(channel, hour, 12, TimeUtil.Unit.HOURS);
+        query(channel, hour.plusHours(1), 3, TimeUtil.Unit.HOURS);
+        query(channel, hour, 15, TimeUtil.Unit.DAYS);
+        ContentKey key = new ContentKey(hour.plusMinutes(10).plusSeconds(1), "1");
+        assertArrayEquals(ContentDaoUtil.createContent(key).getData(), contentDao.get(channel, key).getData());
+    }
+
     private void query(String channel, DateTime start, int expected, TimeUtil.Unit unit) {
         ActiveTraces.start("S3BatchContentDaoTest", channel, start, expected, unit);
         TimeQuery timeQuery = TimeQuery.builder().channelName(channel)
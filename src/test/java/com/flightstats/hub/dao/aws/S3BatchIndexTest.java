@@ -0,0 +1,54 @@
+package com.flightstats.hub.dao.aws;
+
+import com.flightstats.hub.model.ContentKey;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class S3BatchIndexTest {
+
+    private final ContentKey first = new ContentKey(2014, 11, 18, 0, 57, 24, 15, "A");
+    private final ContentKey second = new ContentKey(2014, 11, 18, 0, 57, 25, 1, "B");
+    private final ContentKey missing = new ContentKey(2014, 11, 18, 0, 57, 26, 1, "C");
+
+    @Test
+    public void testBinary() throws IOException {
+        Map<String, long[]> locations = new HashMap<>();
+        locations.put(first.toUrl(), new long[]{0, 100});
+        S3BatchIndex index = S3BatchIndex.read(S3BatchIndex.write(Arrays.asList(second, first), locations));
+        assertEquals(Arrays.asList(first, second), index.getKeys());
+        assertArrayEquals(new long[]{0, 100}, index.getLocation(first));
+        assertNull(index.getLocation(second));
+        assertTrue(index.contains(second));
+        assertFalse(index.contains(missing));
+        assertNull(index.getLocation(missing));
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        String json = "{\"id\":\"2014/11/18/00/57\",\"items\":[\"" + second.toUrl() + "\",\"" + first.toUrl() + "\"]," +
+                "\"locations\":{\"" + second.toUrl() + "\":[120,80]}}";
+        S3BatchIndex index = S3BatchIndex.read(json.getBytes(StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList(first, second), index.getKeys());
+        assertNull(index.getLocation(first));
+        assertArrayEquals(new long[]{120, 80}, index.getLocation(second));
+    }
+
+    @Test
+    public void testJsonWithoutLocations() throws IOException {
+        String json = "{\"id\":\"2014/11/18/00/57\",\"items\":[\"" + first.toUrl() + "\"]}";
+        S3BatchIndex index = S3BatchIndex.read(json.getBytes(StandardCharsets.UTF_8));
+        assertEquals(Collections.singletonList(first), index.getKeys());
+        assertNull(index.getLocation(first));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        byte[] bytes = S3BatchIndex.write(Arrays.asList(first, second), Collections.emptyMap());
+        S3BatchIndex.read(Arrays.copyOf(bytes, bytes.length - 4));
+    }
+}
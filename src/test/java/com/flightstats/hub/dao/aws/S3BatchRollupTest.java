@@ -0,0 +1,37 @@
+package com.flightstats.hub.dao.aws;
+
+import com.flightstats.hub.model.MinutePath;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class S3BatchRollupTest {
+
+    private final DateTime endHour = new DateTime(2016, 3, 4, 10, 0, DateTimeZone.UTC);
+
+    @Test
+    public void testNoCompletedBatches() {
+        assertNull(S3BatchRollup.getEndHour(endHour, null));
+    }
+
+    @Test
+    public void testWebhookBehind() {
+        MinutePath lastCompleted = new MinutePath(new DateTime(2016, 3, 4, 7, 58, DateTimeZone.UTC));
+        assertEquals(endHour.minusHours(3), S3BatchRollup.getEndHour(endHour, lastCompleted));
+    }
+
+    @Test
+    public void testWebhookCompletedHour() {
+        MinutePath lastCompleted = new MinutePath(new DateTime(2016, 3, 4, 7, 59, DateTimeZone.UTC));
+        assertEquals(endHour.minusHours(2), S3BatchRollup.getEndHour(endHour, lastCompleted));
+    }
+
+    @Test
+    public void testWebhookCurrent() {
+        MinutePath lastCompleted = new MinutePath(new DateTime(2016, 3, 4, 11, 30, DateTimeZone.UTC));
+        assertEquals(endHour, S3BatchRollup.getEndHour(endHour, lastCompleted));
+    }
+}
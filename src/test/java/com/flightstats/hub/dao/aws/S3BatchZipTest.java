@@ -0,0 +1,78 @@
+package com.flightstats.hub.dao.aws;
+
+import com.flightstats.hub.channel.ZipBulkBuilder;
+import com.flightstats.hub.dao.ContentDaoUtil;
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.MinutePath;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class S3BatchZipTest {
+
+    @Test
+    public void testLocateAndRead() throws Exception {
+        MinutePath minutePath = new MinutePath();
+        List<ContentKey> keys = new ArrayList<>();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ZipOutputStream output = new ZipOutputStream(baos);
+        for (int i = 0; i < 5; i++) {
+            ContentKey key = new ContentKey(minutePath.getTime().plusSeconds(i), "" + i);
+            keys.add(key);
+            ZipBulkBuilder.createZipEntry(output, ContentDaoUtil.createContent(key));
+        }
+        output.close();
+        byte[] zip = baos.toByteArray();
+
+        Map<String, long[]> locations = S3BatchZip.locate(zip);
+        assertEquals(5, locations.size());
+        for (ContentKey key : keys) {
+            long[] location = locations.get(key.toUrl());
+            byte[] entry = Arrays.copyOfRange(zip, (int) location[0], (int) (location[0] + location[1]));
+            Content read = S3BatchZip.read(key, entry);
+            Content expected = ContentDaoUtil.createContent(key);
+            assertEquals(key, read.getContentKey().get());
+            assertEquals(expected.getContentType().get(), read.getContentType().get());
+            assertArrayEquals(expected.getData(), read.getData());
+        }
+    }
+
+    @Test
+    public void testLocator() throws Exception {
+        MinutePath minutePath = new MinutePath();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ZipOutputStream output = new ZipOutputStream(baos);
+        for (int i = 0; i < 20; i++) {
+            ContentKey key = new ContentKey(minutePath.getTime().plusSeconds(i), "" + i);
+            ZipBulkBuilder.createZipEntry(output, ContentDaoUtil.createContent(key));
+        }
+        output.close();
+        byte[] zip = baos.toByteArray();
+
+        Map<String, long[]> expected = S3BatchZip.locate(zip);
+        for (int size : new int[]{1, 7, 31, 100, 4096, zip.length}) {
+            S3BatchZip.Locator locator = new S3BatchZip.Locator();
+            for (int i = 0; i < zip.length; i += size) {
+                locator.write(zip, i, Math.min(size, zip.length - i));
+            }
+            Map<String, long[]> located = locator.getLocations();
+            assertEquals("write size " + size, 20, located.size());
+            for (Map.Entry<String, long[]> entry : expected.entrySet()) {
+                assertArrayEquals("write size " + size, entry.getValue(), located.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testNotAZip() {
+        assertTrue(S3BatchZip.locate(new byte[100]).isEmpty());
+    }
+}
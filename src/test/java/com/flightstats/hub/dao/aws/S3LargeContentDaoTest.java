@@ -0,0 +1,53 @@
+package com.flightstats.hub.dao.aws;
+
+import com.amazonaws.services.s3.model.PartETag;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class S3LargeContentDaoTest {
+
+    @Test
+    public void testVerifyParts() {
+        List<PartETag> partETags = new ArrayList<>(Arrays.asList(new PartETag(2, "b"), new PartETag(1, "a")));
+        Map<Integer, Long> partLengths = new HashMap<>();
+        partLengths.put(1, 10L);
+        partLengths.put(2, 5L);
+        S3LargeContentDao.verifyParts(15, partETags, partLengths);
+        assertEquals(1, partETags.get(0).getPartNumber());
+        try {
+            S3LargeContentDao.verifyParts(16, partETags, partLengths);
+            fail("the sizes do not match");
+        } catch (RuntimeException e) {
+            //expected
+        }
+        partETags.add(new PartETag(4, "d"));
+        partLengths.put(4, 1L);
+        try {
+            S3LargeContentDao.verifyParts(16, partETags, partLengths);
+            fail("part 3 is missing");
+        } catch (RuntimeException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testMultipartETag() throws IOException {
+        byte[] first = "first part".getBytes();
+        byte[] second = "second part".getBytes();
+        List<PartETag> partETags = Arrays.asList(
+                new PartETag(1, "\"" + DigestUtils.md5Hex(first) + "\""),
+                new PartETag(2, DigestUtils.md5Hex(second)));
+        ByteArrayOutputStream digests = new ByteArrayOutputStream();
+        digests.write(DigestUtils.md5(first));
+        digests.write(DigestUtils.md5(second));
+        assertEquals(DigestUtils.md5Hex(digests.toByteArray()) + "-2", S3LargeContentDao.getMultipartETag(partETags));
+
+        assertNull(S3LargeContentDao.getMultipartETag(Collections.singletonList(new PartETag(1, "kms-etag"))));
+    }
+}
@@ -0,0 +1,96 @@
+package com.flightstats.hub.dao.aws;
+
+import com.flightstats.hub.model.ChannelContentKey;
+import com.flightstats.hub.model.ContentKey;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class S3WriteJournalTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDir();
+    }
+
+    @Test
+    public void testAddTakeComplete() throws Exception {
+        S3WriteJournal journal = new S3WriteJournal(root, 100);
+        ChannelContentKey key = key("one", 1);
+        assertTrue(journal.add(key));
+        assertEquals(1, journal.size());
+        S3WriteJournal.Entry entry = journal.take(1, TimeUnit.SECONDS);
+        assertEquals(key, entry.getKey());
+        assertNull(journal.take(10, TimeUnit.MILLISECONDS));
+        journal.complete(entry);
+        assertEquals(0, journal.size());
+        journal.close();
+    }
+
+    @Test
+    public void testFull() {
+        S3WriteJournal journal = new S3WriteJournal(root, 2);
+        assertTrue(journal.add(key("one", 1)));
+        assertTrue(journal.add(key("one", 2)));
+        assertFalse(journal.add(key("one", 3)));
+        journal.close();
+    }
+
+    @Test
+    public void testChannelsTakeTurns() throws Exception {
+        S3WriteJournal journal = new S3WriteJournal(root, 100);
+        for (int i = 0; i < 5; i++) {
+            journal.add(key("busy", i));
+        }
+        journal.add(key("quiet", 1));
+        List<String> channels = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            channels.add(journal.take(1, TimeUnit.SECONDS).getKey().getChannel());
+        }
+        assertTrue(channels.contains("quiet"));
+        journal.close();
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        S3WriteJournal journal = new S3WriteJournal(root, 100);
+        for (int i = 0; i < 4; i++) {
+            journal.add(key("one", i));
+        }
+        journal.complete(journal.take(1, TimeUnit.SECONDS));
+        journal.take(1, TimeUnit.SECONDS);
+        journal.close();
+
+        S3WriteJournal replayed = new S3WriteJournal(root, 100);
+        assertEquals(4, replayed.size());
+        List<ChannelContentKey> keys = new ArrayList<>();
+        S3WriteJournal.Entry entry;
+        while ((entry = replayed.take(10, TimeUnit.MILLISECONDS)) != null) {
+            keys.add(entry.getKey());
+            replayed.complete(entry);
+        }
+        assertEquals(4, keys.size());
+        assertEquals(key("one", 0), keys.get(0));
+        assertEquals(0, replayed.size());
+        replayed.add(key("one", 5));
+        replayed.close();
+
+        S3WriteJournal last = new S3WriteJournal(root, 100);
+        assertEquals(1, last.size());
+        assertEquals(key("one", 5), last.take(1, TimeUnit.SECONDS).getKey());
+        last.close();
+    }
+
+    private ChannelContentKey key(String channel, int millis) {
+        return new ChannelContentKey(channel, new ContentKey(2014, 11, 18, 0, 57, 24, millis, "A"));
+    }
+}
@@ -121,6 +121,9 @@ public class ChannelConfigTest {
 
         ChannelConfig tags = hasCheez.toBuilder().tags(Sets.newHashSet("one", "two")).build();
         assertFalse(tags.equals(defaults));
+
+        ChannelConfig codec = hasCheez.toBuilder().codec("lz").build();
+        assertFalse(codec.equals(defaults));
     }
 
     @Test
@@ -136,7 +139,9 @@ public class ChannelConfigTest {
                 .protect(false)
                 .mutableTime(TimeUtil.now())
                 .allowZeroBytes(false)
+                .codec("deflate_fast")
                 .build();
+        assertEquals("DEFLATE_FAST", config.getCodec());
         assertTrue(config.equals(config.toBuilder().build()));
 
         assertTrue(config.equals(ChannelConfig.createFromJson(config.toJson())));
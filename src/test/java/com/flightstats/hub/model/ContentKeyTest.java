@@ -4,6 +4,7 @@ import com.flightstats.hub.util.TimeUtil;
 import org.joda.time.DateTime;
 import org.junit.Test;
 
+import java.util.Random;
 import java.util.TreeSet;
 
 import static org.junit.Assert.*;
@@ -74,5 +75,48 @@ public class ContentKeyTest {
         ContentKey nextMinute = new ContentKey(minutePath.getTime().plusMinutes(1), "0");
         assertTrue(nextMinute.compareTo(minutePath) > 0);
     }
-}
 
+    @Test
+    public void testUrlMatchesDateTime() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            long millis = (long) (random.nextDouble() * 4_000_000_000_000L);
+            ContentKey key = new ContentKey(millis, "H" + i);
+            String expected = TimeUtil.millis(key.getTime()) + key.getHash();
+            assertEquals(expected, key.toUrl());
+            assertEquals(key, ContentKey.fromUrl(expected).get());
+        }
+    }
+
+    @Test
+    public void testLeapDay() {
+        ContentKey key = ContentKey.fromUrl("2016/02/29/23/59/59/999/leap").get();
+        assertEquals(new ContentKey(2016, 2, 29, 23, 59, 59, 999, "leap"), key);
+        assertEquals("2016/02/29/23/59/59/999/leap", key.toUrl());
+        assertFalse(ContentKey.fromUrl("2015/02/29/00/00/00/000/leap").isPresent());
+    }
+
+    @Test
+    public void testInvalidUrls() {
+        assertFalse(ContentKey.fromUrl(null).isPresent());
+        assertFalse(ContentKey.fromUrl("2015/01/23/21/11/19/40").isPresent());
+        assertFalse(ContentKey.fromUrl("2015/13/23/21/11/19/407/hash").isPresent());
+        assertFalse(ContentKey.fromUrl("2015/01/23/24/11/19/407/hash").isPresent());
+        assertFalse(ContentKey.fromUrl("2015/01/23/21/60/19/407/hash").isPresent());
+        assertFalse(ContentKey.fromUrl("2015/01/23/21/11/x9/407/hash").isPresent());
+    }
+
+    @Test
+    public void testBulkKeyOrder() {
+        ContentKey master = new ContentKey();
+        assertEquals(master.getHash() + "000007", ContentKey.bulkKey(master, 7).getHash());
+        assertEquals(master.getHash() + "~1000000", ContentKey.bulkKey(master, 1_000_000).getHash());
+        int[] indexes = {0, 1, 9, 10, 999_999, 1_000_000, 9_999_999, 10_000_000, Integer.MAX_VALUE};
+        for (int i = 1; i < indexes.length; i++) {
+            ContentKey previous = ContentKey.bulkKey(master, indexes[i - 1]);
+            ContentKey current = ContentKey.bulkKey(master, indexes[i]);
+            assertTrue(previous.compareTo(current) < 0);
+            assertTrue(previous.toUrl().compareTo(current.toUrl()) < 0);
+        }
+    }
+}
@@ -1,18 +1,27 @@
 package com.flightstats.hub.spoke;
 
+import com.flightstats.hub.dao.ContentCodec;
 import com.flightstats.hub.dao.ContentMarshaller;
 import com.flightstats.hub.model.Content;
 import com.flightstats.hub.model.ContentKey;
 import com.flightstats.hub.util.StringUtils;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class ContentMarshallerTest {
 
+    private final static Logger logger = LoggerFactory.getLogger(ContentMarshallerTest.class);
+
     @Test
     public void testAllFieldsZero() throws IOException {
         verify(getContent(0), 0);
@@ -62,6 +71,60 @@ public class ContentMarshallerTest {
         verify(content, 1024);
     }
 
+    @Test
+    public void testCodecs() throws IOException {
+        for (ContentCodec codec : ContentCodec.values()) {
+            for (int size : new int[]{0, 10, 1024, 100 * 1024}) {
+                verify(getContent(size), size, codec);
+            }
+        }
+    }
+
+    @Test
+    public void testLzRepeated() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 200 * 1024) {
+            builder.append("{\"id\":").append(builder.length() % 1000).append(",\"name\":\"repeated\"}");
+        }
+        byte[] data = builder.toString().getBytes();
+        Content content = Content.builder()
+                .withContentType("application/json")
+                .withData(data)
+                .withContentKey(new ContentKey())
+                .build();
+        byte[] bytes = ContentMarshaller.toBytes(content, ContentCodec.LZ);
+        assertTrue(bytes.length < data.length / 4);
+        Content cycled = ContentMarshaller.toContent(bytes, content.getContentKey().get());
+        assertArrayEquals(data, cycled.getData());
+    }
+
+    @Test
+    public void testCompactEnvelope() throws IOException {
+        Content content = getContent(10);
+        byte[] zip = ContentMarshaller.toBytes(getContent(10), ContentCodec.ZIP);
+        byte[] bytes = ContentMarshaller.toBytes(content, ContentCodec.STORE);
+        assertEquals(10 + 9 + 2 + "application/json".length(), bytes.length);
+        assertTrue(bytes.length < zip.length / 4);
+        Content cycled = ContentMarshaller.toContent(bytes, content.getContentKey().get());
+        assertEquals("application/json", cycled.getContentType().get());
+        assertEquals(10, cycled.getSize().longValue());
+    }
+
+    @Test(expected = IOException.class)
+    public void testZipIdInEnvelope() throws IOException {
+        byte[] bytes = ContentMarshaller.toBytes(getContent(10), ContentCodec.STORE);
+        bytes[3] = (byte) ContentCodec.ZIP.getId();
+        ContentMarshaller.toContent(bytes, new ContentKey());
+    }
+
+    private void verify(Content content, int size, ContentCodec codec) throws IOException {
+        byte[] data = content.getData();
+        Content cycled = ContentMarshaller.toContent(ContentMarshaller.toBytes(content, codec), content.getContentKey().get());
+        assertTrue(content.equals(cycled));
+        assertArrayEquals(data, cycled.getData());
+        assertEquals(size, cycled.getSize().longValue());
+    }
+
     private void verify(Content content, int size) throws IOException {
         Content cycled = ContentMarshaller.toContent(ContentMarshaller.toBytes(content), content.getContentKey().get());
         assertTrue(content.equals(cycled));
@@ -77,4 +140,41 @@ public class ContentMarshallerTest {
                 .withContentKey(new ContentKey())
                 .build();
     }
+
+    /**
+     * Packaging should allocate little more than one copy of the packaged item, where it used to allocate
+     * several while a ByteArrayOutputStream grew and was copied out.
+     */
+    @Test
+    public void testPackageAllocations() throws IOException {
+        int size = 8 * 1024 * 1024;
+        byte[] bytes = StringUtils.randomAlphaNumeric(size).getBytes();
+        for (ContentCodec codec : new ContentCodec[]{ContentCodec.STORE, ContentCodec.ZIP, ContentCodec.LZ}) {
+            for (int i = 0; i < 3; i++) {
+                Content content = Content.builder()
+                        .withContentKey(new ContentKey())
+                        .withContentType("text/plain")
+                        .withContentLength((long) size)
+                        .withStream(new ByteArrayInputStream(bytes))
+                        .build();
+                content.setCodec(codec);
+                long start = allocatedBytes();
+                content.packageStream();
+                ByteBuffer[] buffers = content.getDataBuffers();
+                long allocated = allocatedBytes() - start;
+                long packaged = 0;
+                for (ByteBuffer buffer : buffers) {
+                    packaged += buffer.remaining();
+                }
+                logger.info("{} packaged {} bytes into {} allocating {}", codec, size, packaged, allocated);
+                assertEquals((long) size, (long) content.getSize());
+                assertTrue(codec + " allocated " + allocated, allocated < packaged + packaged / 4 + 1024 * 1024);
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
 }
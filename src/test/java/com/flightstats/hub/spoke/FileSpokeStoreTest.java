@@ -254,6 +254,24 @@ public class FileSpokeStoreTest {
         enforceVerify("testEnforceTtlHour", new DateTime(2015, 2, 1, 12, 45, 1, 2, DateTimeZone.UTC));
     }
 
+    @Test
+    public void testEvictBefore() {
+        String channel = "testEvictBefore";
+        DateTime time = new DateTime(2015, 2, 1, 12, 58, 1, 2, DateTimeZone.UTC);
+        for (int i = 0; i < 4; i++) {
+            spokeStore.insert(channel + "/" + new ContentKey(time.plusMinutes(i), "" + i).toUrl(), BYTES);
+        }
+        long itemCount = spokeStore.getItemCount();
+        assertEquals(2, spokeStore.evictBefore(channel, time.plusMinutes(2)));
+        assertEquals(itemCount - 2, spokeStore.getItemCount());
+        assertFalse(new File(tempDir + "/" + channel + "/2015/02/01/12").exists());
+        verify(channel + "/2015/02/01", 2);
+
+        assertEquals(0, spokeStore.evictUnmodifiedSince(channel, System.currentTimeMillis() - 60 * 1000));
+        assertEquals(2, spokeStore.evictUnmodifiedSince(channel, System.currentTimeMillis() + 1));
+        verify(channel + "/2015/02/01", 0);
+    }
+
     @Test
     public void testLatestBug() {
         DateTime now = TimeUtil.now();
@@ -1,8 +1,26 @@
 package com.flightstats.hub.spoke;
 
+import com.flightstats.hub.cluster.CuratorCluster;
+import com.flightstats.hub.dao.ContentMarshaller;
+import com.flightstats.hub.metrics.MetricsService;
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.model.ContentKey;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class RemoteSpokeStoreTest {
 
@@ -18,4 +36,44 @@ public class RemoteSpokeStoreTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testBuckets() {
+        DateTime start = RemoteSpokeStore.getBucketStart("2014/11/18/00/57");
+        assertEquals(new DateTime(2014, 11, 18, 0, 57, 0, 0, DateTimeZone.UTC), start);
+        assertEquals(new DateTime(2014, 11, 18, 0, 57, 59, 999, DateTimeZone.UTC), RemoteSpokeStore.getBucketEnd(start, "2014/11/18/00/57"));
+
+        start = RemoteSpokeStore.getBucketStart("2014/11/18/23");
+        assertEquals(new DateTime(2014, 11, 18, 23, 0, 0, 0, DateTimeZone.UTC), start);
+        assertEquals(new DateTime(2014, 11, 18, 23, 59, 59, 999, DateTimeZone.UTC), RemoteSpokeStore.getBucketEnd(start, "2014/11/18/23"));
+
+        start = RemoteSpokeStore.getBucketStart("2014/11/18/00/57/24");
+        assertEquals(new DateTime(2014, 11, 18, 0, 57, 24, 999, DateTimeZone.UTC), RemoteSpokeStore.getBucketEnd(start, "2014/11/18/00/57/24"));
+    }
+
+    @Test
+    public void testMissMovesOnDuringHedge() throws Exception {
+        ContentKey key = new ContentKey();
+        Content content = Content.builder().withContentKey(key).withData("found".getBytes()).build();
+        CuratorCluster cluster = mock(CuratorCluster.class);
+        when(cluster.getRandomServers()).thenReturn(Arrays.asList("slow", "missing", "found"));
+        CompletableFuture<ContentResponse> missing = response(404, new byte[0]);
+        CompletableFuture<ContentResponse> found = response(200, ContentMarshaller.toBytes(content));
+        SpokeClient spokeClient = mock(SpokeClient.class);
+        when(spokeClient.get(contains("slow"), anyInt())).thenReturn(new CompletableFuture<>());
+        when(spokeClient.get(contains("missing"), anyInt())).thenReturn(missing);
+        when(spokeClient.get(contains("found"), anyInt())).thenReturn(found);
+        RemoteSpokeStore store = new RemoteSpokeStore(cluster, mock(MetricsService.class), spokeClient);
+
+        long start = System.currentTimeMillis();
+        Content read = store.get(SpokeStore.READ, "channel/" + key.toUrl(), key);
+        assertArrayEquals("found".getBytes(), read.getData());
+        assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private CompletableFuture<ContentResponse> response(int status, byte[] bytes) {
+        ContentResponse response = mock(ContentResponse.class);
+        when(response.getStatus()).thenReturn(status);
+        when(response.getContent()).thenReturn(bytes);
+        return CompletableFuture.completedFuture(response);
+    }
+}
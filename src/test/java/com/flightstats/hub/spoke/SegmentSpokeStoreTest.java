@@ -0,0 +1,334 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.dao.ContentKeyUtil;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.util.TimeUtil;
+import com.google.common.io.Files;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.NotFoundException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class SegmentSpokeStoreTest {
+    private static final byte[] BYTES = new byte[]{0, 2, 3, 4, 5, 6};
+    private final static Logger logger = LoggerFactory.getLogger(SegmentSpokeStoreTest.class);
+    private String tempDir;
+    private SegmentSpokeStore spokeStore;
+    private static final int ttlMinutes = HubProperties.getSpokeTtlMinutes(SpokeStore.WRITE);
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDir().getPath();
+        spokeStore = new SegmentSpokeStore(tempDir, ttlMinutes);
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        String path = "channelWR/" + new ContentKey().toUrl();
+        assertTrue(spokeStore.insert(path, BYTES));
+        byte[] read = spokeStore.read(path);
+        assertArrayEquals(BYTES, read);
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testMissing() throws Exception {
+        spokeStore.read("channelMissing/" + new ContentKey().toUrl());
+    }
+
+    @Test
+    public void testSplitItemPath() throws Exception {
+        String[] split = SegmentSpokeStore.splitItemPath("/test_0_4274725520517677/2014/11/18/00/57/24/015/NV2cl5");
+        assertEquals("test_0_4274725520517677/2014/11/18/00/57", split[0]);
+        assertEquals("24015NV2cl5", split[1]);
+    }
+
+    @Test
+    public void testOneFilePerMinute() throws Exception {
+        String channel = "testOneFilePerMinute";
+        DateTime time = new DateTime(2014, 11, 18, 0, 57, 1, 0, DateTimeZone.UTC);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(spokeStore.insert(channel + "/" + new ContentKey(time.plusMillis(i * 100), "" + i).toUrl(), BYTES));
+        }
+        String[] files = new File(tempDir + "/" + channel + "/2014/11/18/00/57").list();
+        assertArrayEquals(new String[]{SegmentSpokeStore.SEGMENT}, files);
+        assertEquals(50, spokeStore.keysInBucket(channel + "/2014/11/18/00/57").size());
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        String channel = "testReopen";
+        ContentKey first = new ContentKey(2014, 11, 18, 0, 57, 1, 0, "A");
+        ContentKey second = new ContentKey(2014, 11, 18, 0, 57, 2, 0, "B");
+        ContentKey third = new ContentKey(2014, 11, 18, 0, 57, 3, 0, "C");
+        byte[] large = new byte[200 * 1024];
+        Arrays.fill(large, (byte) 7);
+        assertTrue(spokeStore.insert(channel + "/" + first.toUrl(), BYTES));
+        assertTrue(spokeStore.insert(channel + "/" + second.toUrl(), large));
+        assertTrue(spokeStore.insert(channel + "/" + third.toUrl(), BYTES));
+        assertTrue(spokeStore.deleteFile(channel + "/" + third.toUrl()));
+
+        File segment = new File(tempDir + "/" + channel + "/2014/11/18/00/57/" + SegmentSpokeStore.SEGMENT);
+        long length = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(length + 3);
+        }
+
+        SegmentSpokeStore reopened = new SegmentSpokeStore(tempDir, ttlMinutes);
+        assertArrayEquals(BYTES, reopened.read(channel + "/" + first.toUrl()));
+        assertArrayEquals(large, reopened.read(channel + "/" + second.toUrl()));
+        assertEquals(2, reopened.keysInBucket(channel + "/2014/11/18/00/57").size());
+        assertEquals(length, segment.length());
+    }
+
+    @Test
+    public void testStreamInsert() throws Exception {
+        String channel = "testStreamInsert";
+        ContentKey first = new ContentKey(2014, 11, 18, 0, 57, 1, 0, "A");
+        ContentKey failed = new ContentKey(2014, 11, 18, 0, 57, 2, 0, "B");
+        ContentKey last = new ContentKey(2014, 11, 18, 0, 57, 3, 0, "C");
+        byte[] large = new byte[200 * 1024];
+        Arrays.fill(large, (byte) 7);
+        assertTrue(spokeStore.insert(channel + "/" + first.toUrl(), new ByteArrayInputStream(large)));
+        InputStream broken = new SequenceInputStream(new ByteArrayInputStream(large), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        });
+        assertFalse(spokeStore.insert(channel + "/" + failed.toUrl(), broken));
+        assertTrue(spokeStore.insert(channel + "/" + last.toUrl(), new ByteArrayInputStream(BYTES)));
+
+        SegmentSpokeStore reopened = new SegmentSpokeStore(tempDir, ttlMinutes);
+        assertArrayEquals(large, reopened.read(channel + "/" + first.toUrl()));
+        assertArrayEquals(BYTES, reopened.read(channel + "/" + last.toUrl()));
+        assertEquals(2, reopened.keysInBucket(channel + "/2014/11/18/00/57").size());
+    }
+
+    @Test
+    public void testEvictWhileWriting() throws Exception {
+        String openSegments = HubProperties.getProperty("spoke.segment.openSegments", "5000");
+        HubProperties.setProperty("spoke.segment.openSegments", "1");
+        try {
+            SegmentSpokeStore store = new SegmentSpokeStore(tempDir, ttlMinutes);
+            String channel = "testEvictWhileWriting";
+            DateTime time = new DateTime(2014, 11, 18, 0, 0, 0, 0, DateTimeZone.UTC);
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<Boolean>> futures = new ArrayList<>();
+            List<String> paths = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                String path = channel + "/" + new ContentKey(time.plusMinutes(i % 3).plusMillis(i), "" + i).toUrl();
+                byte[] payload = payload(i);
+                paths.add(path);
+                futures.add(executor.submit(() -> store.insert(path, new ByteArrayInputStream(payload))));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+            executor.shutdown();
+
+            SegmentSpokeStore reopened = new SegmentSpokeStore(tempDir, ttlMinutes);
+            for (int i = 0; i < paths.size(); i++) {
+                assertArrayEquals(payload(i), reopened.read(paths.get(i)));
+            }
+        } finally {
+            HubProperties.setProperty("spoke.segment.openSegments", openSegments);
+        }
+    }
+
+    private byte[] payload(int i) {
+        byte[] payload = new byte[1000 + i % 300];
+        Arrays.fill(payload, (byte) i);
+        return payload;
+    }
+
+    @Test
+    public void testInsertAfterEvict() throws Exception {
+        String channel = "testInsertAfterEvict";
+        String path = channel + "/" + new ContentKey(2014, 11, 18, 0, 57, 1, 0, "A").toUrl();
+        assertTrue(spokeStore.insert(path, BYTES));
+        assertEquals(1, spokeStore.evict(channel + "/2014/11/18/00/57"));
+        assertFalse(new File(tempDir + "/" + channel + "/2014/11/18/00/57").exists());
+        assertTrue(spokeStore.insert(path, BYTES));
+        assertArrayEquals(BYTES, new SegmentSpokeStore(tempDir, ttlMinutes).read(path));
+    }
+
+    @Test
+    public void testAdjacentPaths() throws Exception {
+        String previousSecond = "testAdjacentPaths/2014/11/18/00/57/23/015/1";
+        String path1 = "testAdjacentPaths/2014/11/18/00/57/24/015/1";
+        String path2 = "testAdjacentPaths/2014/11/18/00/57/24/015/2";
+        String path3 = "testAdjacentPaths/2014/11/18/00/57/24/015/3";
+        String nextSecond = "testAdjacentPaths/2014/11/18/00/57/25/015/1";
+
+        spokeStore.insert(path1, BYTES);
+        spokeStore.insert(path2, BYTES);
+        spokeStore.insert(path3, BYTES);
+        spokeStore.insert(previousSecond, BYTES);
+        spokeStore.insert(nextSecond, BYTES);
+
+        String previousMillisecond = "testAdjacentPaths/2014/11/18/00/57/24/014/1";
+        spokeStore.insert(previousMillisecond, BYTES);
+        String nextMillisecond = "testAdjacentPaths/2014/11/18/00/57/24/016/1";
+        spokeStore.insert(nextMillisecond, BYTES);
+
+        Collection<String> keys = spokeStore.keysInBucket("/testAdjacentPaths/2014/11/18/00/57");
+        assertEquals(7, keys.size());
+        logger.info("files " + keys);
+        assertTrue(keys.contains(path1));
+        assertTrue(keys.contains(path2));
+        assertTrue(keys.contains(path3));
+
+        keys = spokeStore.keysInBucket("/testAdjacentPaths/2014/11/18/00/57/24");
+        assertEquals(5, keys.size());
+
+        keys = spokeStore.keysInBucket("/testAdjacentPaths/2014/11/18");
+        assertEquals(7, keys.size());
+        assertTrue(keys.contains(nextSecond));
+    }
+
+    @Test
+    public void testLastFile() {
+        DateTime time = new DateTime(2014, 12, 31, 23, 30, 1, 2, DateTimeZone.UTC);
+        for (int i = 0; i < 30; i++) {
+            time = time.plusMinutes(2);
+            spokeStore.insert("testLastFile/" + new ContentKey(time, "A").toUrl(), BYTES);
+            time = time.plusSeconds(1);
+            spokeStore.insert("testLastFile/" + new ContentKey(time, "B").toUrl(), BYTES);
+            time = time.plusMillis(1);
+            spokeStore.insert("testLastFile/" + new ContentKey(time, "C").toUrl(), BYTES);
+        }
+        ContentKey limitKey = new ContentKey(time.minusMinutes(1), "A");
+        String found = spokeStore.getLatest("testLastFile", limitKey.toUrl());
+        assertEquals("testLastFile/2015/01/01/00/28/30/031/C", found);
+
+        limitKey = new ContentKey(time, "B");
+        found = spokeStore.getLatest("testLastFile", limitKey.toUrl());
+        assertEquals("testLastFile/2015/01/01/00/30/31/031/B", found);
+
+        limitKey = new ContentKey(time.plusMinutes(1), "D");
+        found = spokeStore.getLatest("testLastFile", limitKey.toUrl());
+        assertEquals("testLastFile/2015/01/01/00/30/31/032/C", found);
+    }
+
+    @Test
+    public void testLatestBug() {
+        DateTime now = TimeUtil.now();
+        DateTime afterTheHour = now.withMinuteOfHour(0).withSecondOfMinute(0).withMillisOfSecond(1);
+        DateTime beforeTheHour = now.minusHours(1).withMinuteOfHour(59).withSecondOfMinute(59).withMillisOfSecond(999);
+        assertTrue(spokeStore.insert("testLatestBug/" + new ContentKey(afterTheHour, "0").toUrl(), BYTES));
+        String beforeKey = new ContentKey(beforeTheHour, "0").toUrl();
+        assertTrue(spokeStore.insert("testLatestBug/" + beforeKey, BYTES));
+        DateTime limitTime = afterTheHour.withMillisOfSecond(0);
+        String read = spokeStore.getLatest("testLatestBug", ContentKey.lastKey(limitTime).toUrl());
+        assertNotNull(read);
+        assertEquals("testLatestBug/" + beforeKey, read);
+    }
+
+    @Test
+    public void testNextN() throws IOException {
+        String name = "testNextN";
+
+        DateTime startTime = TimeUtil.now().minusMinutes(59);
+        DateTime time = startTime;
+        for (int i = 0; i < 30; i++) {
+            time = time.plusMinutes(2);
+            spokeStore.insert(name + "/" + new ContentKey(time, "A").toUrl(), BYTES);
+            time = time.plusSeconds(1);
+            spokeStore.insert(name + "/" + new ContentKey(time, "B").toUrl(), BYTES);
+            time = time.plusMillis(1);
+            spokeStore.insert(name + "/" + new ContentKey(time, "C").toUrl(), BYTES);
+        }
+        ContentKey limitKey = new ContentKey(startTime, "A");
+
+        List<String> found = getNextTesting(name, limitKey.toUrl(), 90);
+        assertEquals(87, found.size());
+
+        limitKey = new ContentKey(startTime.plusMinutes(30), "A");
+        found = getNextTesting(name, limitKey.toUrl(), 45);
+        assertEquals(45, found.size());
+    }
+
+    @Test
+    public void testNextNFilterSeconds() throws IOException {
+        String name = "testNextNFilterSeconds";
+
+        DateTime startTime = TimeUtil.now().withSecondOfMinute(10).minusMinutes(10);
+        ContentKey contentKeyA = new ContentKey(startTime, "A");
+        spokeStore.insert(name + "/" + contentKeyA.toUrl(), BYTES);
+        ContentKey contentKeyB = new ContentKey(startTime.plusSeconds(1), "B");
+        spokeStore.insert(name + "/" + contentKeyB.toUrl(), BYTES);
+        ContentKey contentKeyC = new ContentKey(startTime.plusSeconds(2), "C");
+        spokeStore.insert(name + "/" + contentKeyC.toUrl(), BYTES);
+        ContentKey contentKeyD = new ContentKey(startTime.plusSeconds(3), "D");
+        spokeStore.insert(name + "/" + contentKeyD.toUrl(), BYTES);
+
+        ContentKey limitKey = new ContentKey(startTime, "B");
+
+        List<String> found = getNextTesting(name, limitKey.toUrl(), 2);
+        logger.info("found {}", found);
+        assertEquals(3, found.size());
+        assertTrue(contentKeyB.toUrl(), found.contains(name + "/" + contentKeyB.toUrl()));
+        assertTrue(found.contains(name + "/" + contentKeyC.toUrl()));
+    }
+
+    private List<String> getNextTesting(String channel, String startKey, int count) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        spokeStore.getNext(channel, startKey, count, baos);
+        String[] split = baos.toString().split(",");
+        return Arrays.asList(split);
+    }
+
+    @Test
+    public void testEnforceTtlYear() {
+        enforceVerify("testEnforceTtlYear", new DateTime(2014, 12, 31, 23, 45, 1, 2, DateTimeZone.UTC));
+    }
+
+    @Test
+    public void testEnforceTtlHour() {
+        enforceVerify("testEnforceTtlHour", new DateTime(2015, 2, 1, 12, 45, 1, 2, DateTimeZone.UTC));
+    }
+
+    private void enforceVerify(String channel, DateTime startTime) {
+        DateTime time = startTime;
+        String startQuery = TimeUtil.hours(time);
+        for (int i = 0; i < 30; i++) {
+            time = time.plusMinutes(1);
+            spokeStore.insert(channel + "/" + new ContentKey(time, "" + i).toUrl(), BYTES);
+        }
+        String endQuery = TimeUtil.hours(time);
+        verify(channel + "/" + startQuery, 14);
+        verify(channel + "/" + endQuery, 16);
+
+        spokeStore.evictBefore(channel, startTime.plusMinutes(18));
+        verify(channel + "/" + startQuery, 0);
+        verify(channel + "/" + endQuery, 13);
+    }
+
+    private void verify(String path, int expected) {
+        ArrayList<ContentKey> keys = new ArrayList<>();
+        ContentKeyUtil.convertKeyStrings(spokeStore.readKeysInBucket(path), keys);
+        assertEquals(expected, keys.size());
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.dao.ContentMarshaller;
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.model.ContentKey;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SpokeBulkTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<Content> items = Arrays.asList(content("one", 1), content("two", 2), content("", 3));
+        Map<String, byte[]> read = new LinkedHashMap<>();
+        assertTrue(SpokeBulk.read(toStream(SpokeBulk.toFrames(items)), (key, data) -> {
+            read.put(key, ByteStreams.toByteArray(data));
+            return true;
+        }));
+        assertEquals(3, read.size());
+        for (Content content : items) {
+            assertArrayEquals(content.getData(), read.get(content.getContentKey().get().toUrl()));
+        }
+    }
+
+    @Test
+    public void testObjectStream() throws IOException {
+        List<Content> items = Arrays.asList(content("one", 1), content("two", 2));
+        BufferedInputStream bulk = new BufferedInputStream(toStream(SpokeBulk.toObjectStream(items)));
+        assertFalse(SpokeBulk.isBulk(bulk));
+        ObjectInputStream stream = new ObjectInputStream(bulk);
+        assertEquals(2, stream.readInt());
+        for (Content content : items) {
+            byte[] key = new byte[stream.readInt()];
+            stream.readFully(key);
+            assertEquals(content.getContentKey().get().toUrl(), new String(key));
+            byte[] data = new byte[stream.readInt()];
+            stream.readFully(data);
+            assertArrayEquals(content.getData(), data);
+        }
+    }
+
+    @Test
+    public void testPackageInParallel() throws IOException {
+        List<Content> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(content("item " + i, i));
+        }
+        List<String> keys = new ArrayList<>();
+        List<byte[]> read = new ArrayList<>();
+        assertTrue(SpokeBulk.read(toStream(SpokeBulk.toFrames(items)), (key, data) -> {
+            keys.add(key);
+            read.add(ByteStreams.toByteArray(data));
+            return true;
+        }));
+        assertEquals(1000, keys.size());
+        for (int i = 0; i < 1000; i++) {
+            ContentKey key = items.get(i).getContentKey().get();
+            assertEquals(key.toUrl(), keys.get(i));
+            Content content = ContentMarshaller.toContent(read.get(i), key);
+            assertEquals("item " + i, new String(content.getData()));
+        }
+    }
+
+    @Test
+    public void testUnreadData() throws IOException {
+        List<Content> items = Arrays.asList(content("one", 1), content("two", 2));
+        List<String> keys = new ArrayList<>();
+        assertTrue(SpokeBulk.read(toStream(SpokeBulk.toFrames(items)), (key, data) -> keys.add(key)));
+        assertEquals(2, keys.size());
+    }
+
+    @Test
+    public void testStopped() throws IOException {
+        List<Content> items = Arrays.asList(content("one", 1), content("two", 2));
+        List<String> keys = new ArrayList<>();
+        assertFalse(SpokeBulk.read(toStream(SpokeBulk.toFrames(items)), (key, data) -> {
+            keys.add(key);
+            return false;
+        }));
+        assertEquals(1, keys.size());
+    }
+
+    @Test
+    public void testIsBulk() throws IOException {
+        BufferedInputStream bulk = new BufferedInputStream(toStream(SpokeBulk.toFrames(Collections.singletonList(content("one", 1)))));
+        assertTrue(SpokeBulk.isBulk(bulk));
+        assertTrue(SpokeBulk.read(bulk, (key, data) -> true));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream stream = new ObjectOutputStream(baos);
+        stream.writeInt(0);
+        stream.flush();
+        assertFalse(SpokeBulk.isBulk(new BufferedInputStream(new ByteArrayInputStream(baos.toByteArray()))));
+        assertFalse(SpokeBulk.isBulk(new BufferedInputStream(new ByteArrayInputStream(new byte[2]))));
+    }
+
+    @Test
+    public void testWriteItems() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SpokeBulk.writeStart(output);
+        SpokeBulk.writeItem(output, "2014/11/18/00/57/24/015/A", "one".getBytes());
+        SpokeBulk.writeItem(output, "2014/11/18/00/57/24/016/A", "two".getBytes());
+        SpokeBulk.writeEnd(output);
+        Map<String, String> read = new LinkedHashMap<>();
+        assertTrue(SpokeBulk.read(new ByteArrayInputStream(output.toByteArray()), (key, data) -> {
+            read.put(key, new String(ByteStreams.toByteArray(data)));
+            return true;
+        }));
+        assertEquals("{2014/11/18/00/57/24/015/A=one, 2014/11/18/00/57/24/016/A=two}", read.toString());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncated() throws IOException {
+        byte[] bytes = ByteStreams.toByteArray(toStream(SpokeBulk.toFrames(Collections.singletonList(content("one", 1)))));
+        InputStream truncated = new ByteArrayInputStream(bytes, 0, bytes.length - 8);
+        SpokeBulk.read(truncated, (key, data) -> {
+            ByteStreams.toByteArray(data);
+            return true;
+        });
+    }
+
+    private Content content(String data, int millis) {
+        return Content.builder()
+                .withContentType("text/plain")
+                .withContentKey(new ContentKey(2014, 11, 18, 0, 57, 24, millis, "A"))
+                .withData(data.getBytes())
+                .build();
+    }
+
+    private InputStream toStream(byte[][] frames) {
+        List<InputStream> streams = new ArrayList<>();
+        for (byte[] frame : frames) {
+            streams.add(new ByteArrayInputStream(frame));
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+}
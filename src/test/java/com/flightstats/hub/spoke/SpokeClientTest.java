@@ -0,0 +1,83 @@
+package com.flightstats.hub.spoke;
+
+import com.google.common.io.ByteStreams;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SpokeClientTest {
+
+    private static final Map<String, byte[]> items = new ConcurrentHashMap<>();
+    private static Server server;
+    private static String baseUri;
+    private static SpokeClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                baseRequest.setHandled(true);
+                switch (request.getMethod()) {
+                    case "PUT":
+                        items.put(target, ByteStreams.toByteArray(request.getInputStream()));
+                        response.setStatus(201);
+                        break;
+                    case "DELETE":
+                        items.remove(target);
+                        response.setStatus(204);
+                        break;
+                    default:
+                        byte[] bytes = items.get(target);
+                        if (bytes == null) {
+                            response.setStatus(404);
+                        } else {
+                            response.setStatus(200);
+                            response.getOutputStream().write(bytes);
+                        }
+                }
+            }
+        });
+        server.start();
+        baseUri = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        client = new SpokeClient();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testPutGetDelete() throws Exception {
+        byte[] payload = new byte[100 * 1024];
+        payload[10] = 7;
+        assertEquals(201, client.put(baseUri + "/item", payload, 5).get().getStatus());
+        ContentResponse response = client.get(baseUri + "/item", 5).get();
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(payload, response.getContent());
+        assertEquals(204, client.delete(baseUri + "/item", 5).get().getStatus());
+        assertEquals(404, client.get(baseUri + "/item", 5).get().getStatus());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testConnectionFailure() throws Exception {
+        client.get("http://localhost:1/item", 5).get();
+    }
+}
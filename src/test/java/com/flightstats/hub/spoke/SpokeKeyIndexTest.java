@@ -0,0 +1,136 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.model.ChannelContentKey;
+import com.flightstats.hub.model.ContentKey;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpokeKeyIndexTest {
+
+    private static final DateTime TTL_TIME = new DateTime(2014, 11, 18, 0, 0, 0, 0, DateTimeZone.UTC);
+    private SpokeKeyIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        index = new SpokeKeyIndex();
+        index.add("channel/2014/11/18/00/57/24/015/A");
+        index.add("channel/2014/11/18/00/57/24/015/B");
+        index.add("channel/2014/11/18/00/57/25/001/A");
+        index.add("channel/2014/11/18/00/58/01/000/A");
+        index.add("channel/2014/11/18/01/02/01/000/A");
+    }
+
+    @Test
+    public void testKeysInBucket() throws IOException {
+        assertEquals("channel/2014/11/18/00/57/24/015/A,channel/2014/11/18/00/57/24/015/B,",
+                keysInBucket("channel/2014/11/18/00/57/24"));
+        assertEquals(3, keysInBucket("channel/2014/11/18/00/57").split(",").length);
+        assertEquals(4, keysInBucket("channel/2014/11/18/00").split(",").length);
+        assertEquals(5, keysInBucket("channel/2014").split(",").length);
+        assertEquals("", keysInBucket("other/2014"));
+    }
+
+    @Test
+    public void testLatest() {
+        assertEquals("channel/2014/11/18/00/57/24/015/B", index.getLatest("channel", "2014/11/18/00/57/25/001/A", TTL_TIME));
+        assertEquals("channel/2014/11/18/00/58/01/000/A", index.getLatest("channel", "2014/11/18/01/01/00/000/A", TTL_TIME));
+        assertNull(index.getLatest("channel", "2014/11/18/00/57/24/015/A", TTL_TIME));
+        assertNull(index.getLatest("other", "2014/11/18/00/57/24/015/A", TTL_TIME));
+    }
+
+    @Test
+    public void testNext() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        index.getNext("channel", "2014/11/18/00/57/24/015/A", 3, baos);
+        assertEquals("channel/2014/11/18/00/57/24/015/B,channel/2014/11/18/00/57/25/001/A,channel/2014/11/18/00/58/01/000/A,",
+                baos.toString());
+    }
+
+    @Test
+    public void testRemove() throws IOException {
+        index.remove("channel/2014/11/18/00/57/24/015/B");
+        assertEquals(2, index.removeBucket("channel/2014/11/18/00/57"));
+        assertEquals(2, index.removeBucket("channel"));
+        assertEquals("", keysInBucket("channel/2014"));
+    }
+
+    @Test
+    public void testCounters() {
+        assertEquals(5, index.size());
+        index.add("channel/2014/11/18/00/57/24/015/A");
+        index.add("other/2014/11/17/00/57/24/015/A");
+        assertEquals(6, index.size());
+        assertEquals(new ChannelContentKey("other", new ContentKey(2014, 11, 17, 0, 57, 24, 15, "A")), index.getOldest().get());
+        index.removeBucket("other");
+        assertEquals(new ChannelContentKey("channel", new ContentKey(2014, 11, 18, 0, 57, 24, 15, "A")), index.getOldest().get());
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void testMinutes() {
+        assertEquals(Arrays.asList("2014/11/18/00/57", "2014/11/18/00/58"), index.getMinutesBefore("channel", "2014/11/18/01/02"));
+        assertTrue(index.getMinutesModifiedBefore("channel", System.currentTimeMillis() - 60 * 1000).isEmpty());
+        index.add("channel", "2014/11/18/00/30", "00000A", 1000);
+        assertEquals(Collections.singletonList("2014/11/18/00/30"), index.getMinutesModifiedBefore("channel", 2000));
+    }
+
+    @Test
+    public void testMinuteOrder() throws IOException {
+        index.add("channel/2014/11/18/00/57/24/015/AB");
+        index.add("channel/2014/11/18/00/57/09/999/Z");
+        index.add("channel/2014/11/18/00/57/59/999/A");
+        assertEquals("channel/2014/11/18/00/57/09/999/Z,channel/2014/11/18/00/57/24/015/A,channel/2014/11/18/00/57/24/015/AB," +
+                        "channel/2014/11/18/00/57/24/015/B,channel/2014/11/18/00/57/25/001/A,channel/2014/11/18/00/57/59/999/A,",
+                keysInBucket("channel/2014/11/18/00/57"));
+        assertEquals("channel/2014/11/18/00/57/24/015/AB", index.getLatest("channel", "2014/11/18/00/57/24/015/B", TTL_TIME));
+        assertEquals("channel/2014/11/18/00/57/59/999/A,", keysInBucket("channel/2014/11/18/00/57/59"));
+    }
+
+    @Test
+    public void testRemoveWhileAdding() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 3; thread++) {
+            String hash = "T" + thread;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    index.add(String.format("other/2014/11/18/00/%02d/%02d/%03d/%s", i % 3, i % 60, i % 1000, hash));
+                }
+            }));
+        }
+        futures.add(executor.submit(() -> {
+            for (int i = 0; i < 200; i++) {
+                index.removeBucket(i % 2 == 0 ? "other" : "other/2014/11/18/00/01");
+            }
+        }));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        String keys = keysInBucket("other/2014");
+        int other = keys.isEmpty() ? 0 : keys.split(",").length;
+        assertEquals(5 + other, index.size());
+    }
+
+    private String keysInBucket(String path) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        index.keysInBucket(path, baos);
+        return baos.toString();
+    }
+}
@@ -0,0 +1,34 @@
+package com.flightstats.hub.spoke;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SpokeReadLatencyTest {
+
+    @Test
+    public void testNoSamples() {
+        SpokeReadLatency latency = new SpokeReadLatency(100, 95, 10, 1000);
+        assertEquals(1000, latency.getDelayMillis());
+    }
+
+    @Test
+    public void testPercentile() {
+        SpokeReadLatency latency = new SpokeReadLatency(100, 90, 10, 1000);
+        for (int i = 1; i <= 100; i++) {
+            latency.record(i * 2);
+        }
+        assertEquals(180, latency.getDelayMillis());
+    }
+
+    @Test
+    public void testBounds() {
+        SpokeReadLatency latency = new SpokeReadLatency(10, 50, 10, 1000);
+        latency.record(1);
+        assertEquals(10, latency.getDelayMillis());
+
+        latency = new SpokeReadLatency(10, 50, 10, 1000);
+        latency.record(5000);
+        assertEquals(1000, latency.getDelayMillis());
+    }
+}
@@ -0,0 +1,64 @@
+package com.flightstats.hub.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ByteBlocksTest {
+
+    @Test
+    public void testWrites() throws IOException {
+        Random random = new Random(3);
+        byte[] bytes = new byte[3 * 1024 * 1024 + 17];
+        random.nextBytes(bytes);
+        ByteBlocks blocks = new ByteBlocks(100);
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (random.nextInt(10) == 0) {
+                blocks.write(bytes[offset++]);
+            } else {
+                int length = Math.min(bytes.length - offset, random.nextInt(50_000));
+                blocks.write(bytes, offset, length);
+                offset += length;
+            }
+        }
+        assertEquals(bytes.length, blocks.size());
+        assertArrayEquals(bytes, blocks.toByteArray());
+
+        ByteArrayOutputStream fromBuffers = new ByteArrayOutputStream();
+        ByteBuffer[] buffers = blocks.toBuffers();
+        assertTrue(buffers.length > 1);
+        for (ByteBuffer buffer : buffers) {
+            byte[] block = new byte[buffer.remaining()];
+            buffer.get(block);
+            fromBuffers.write(block, 0, block.length);
+        }
+        assertArrayEquals(bytes, fromBuffers.toByteArray());
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        blocks.writeTo(written);
+        assertArrayEquals(bytes, written.toByteArray());
+    }
+
+    @Test
+    public void testPutIntAcrossBlocks() {
+        ByteBlocks blocks = new ByteBlocks(18);
+        blocks.write(new byte[20], 0, 20);
+        blocks.putInt(16, 0x01020304);
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, Arrays.copyOfRange(blocks.toByteArray(), 16, 20));
+    }
+
+    @Test
+    public void testExactBlockIsNotCopied() {
+        ByteBlocks blocks = new ByteBlocks(16);
+        byte[] bytes = new byte[16];
+        blocks.write(bytes, 0, 16);
+        assertSame(blocks.toByteArray(), blocks.toByteArray());
+    }
+}
@@ -0,0 +1,122 @@
+package com.flightstats.hub.util;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ChunkOutputStreamTest {
+
+    @Test
+    public void testChunks() throws IOException {
+        byte[] bytes = new byte[12 * 1024 * 1024 + 7];
+        new Random(5).nextBytes(bytes);
+        Map<Integer, byte[]> chunks = new ConcurrentSkipListMap<>();
+        ChunkOutputStream output = new ChunkOutputStream(2, chunk -> {
+            try {
+                chunks.put(chunk.getCount(), ByteStreams.toByteArray(chunk.getStream()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return "ok";
+        });
+        output.write(bytes[0]);
+        output.write(bytes, 1, bytes.length - 1);
+        output.close();
+
+        assertEquals(3, chunks.size());
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks.values()) {
+            joined.write(chunk);
+        }
+        assertArrayEquals(bytes, joined.toByteArray());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ChunkOutputStream output = new ChunkOutputStream(2, chunk -> {
+            fail("no chunks expected");
+            return "ok";
+        });
+        output.close();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testFailure() throws IOException {
+        ChunkOutputStream output = new ChunkOutputStream(2, chunk -> {
+            throw new IllegalStateException("upload failed");
+        });
+        output.write(new byte[1024], 0, 1024);
+        output.close();
+    }
+
+    @Test
+    public void testAbort() throws IOException {
+        ChunkOutputStream output = new ChunkOutputStream(2, chunk -> "ok");
+        output.write(new byte[1024], 0, 1024);
+        output.abort();
+        output.abort();
+        try {
+            output.write(1);
+            fail("aborted streams do not accept writes");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testAbortWaitsForUploads() throws Exception {
+        AtomicBoolean uploaded = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(1);
+        ChunkOutputStream output = new ChunkOutputStream(2, chunk -> {
+            started.countDown();
+            Sleeper.sleep(500);
+            uploaded.set(true);
+            return "ok";
+        });
+        byte[] bytes = new byte[ChunkStrategy.getSize(1)];
+        output.write(bytes, 0, bytes.length);
+        started.await();
+        output.abort();
+        assertTrue(uploaded.get());
+    }
+
+    @Test
+    public void testAbortAfterFailedClose() throws Exception {
+        AtomicBoolean uploaded = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(1);
+        ChunkOutputStream output = new ChunkOutputStream(2, chunk -> {
+            if (chunk.getCount() > 1) {
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeInterruptedException(e);
+                }
+                throw new IllegalStateException("upload failed");
+            }
+            started.countDown();
+            Sleeper.sleep(500);
+            uploaded.set(true);
+            return "ok";
+        });
+        byte[] bytes = new byte[ChunkStrategy.getSize(1) + 1024];
+        output.write(bytes, 0, bytes.length);
+        try {
+            output.close();
+            fail("the second chunk fails");
+        } catch (RuntimeException e) {
+            //expected
+        }
+        output.abort();
+        assertTrue(uploaded.get());
+    }
+}
@@ -1,7 +1,10 @@
 package com.flightstats.hub.util;
 
+import com.google.common.io.ByteStreams;
 import org.junit.Test;
 
+import java.io.IOException;
+
 import static org.junit.Assert.*;
 
 public class ChunkTest {
@@ -28,4 +31,15 @@ public class ChunkTest {
         assertFalse(chunk.add(5));
         assertArrayEquals(expected, chunk.getBytes());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAddArray() throws IOException {
+        Chunk chunk = new Chunk(1, 4);
+        assertEquals(3, chunk.add(new byte[]{9, 1, 2, 3}, 1, 3));
+        assertEquals(1, chunk.add(new byte[]{4, 5}, 0, 2));
+        assertTrue(chunk.isFull());
+        assertEquals(0, chunk.add(new byte[]{6}, 0, 1));
+        assertEquals(4, chunk.getLength());
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, ByteStreams.toByteArray(chunk.getStream()));
+    }
+}